@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader;
+
+import org.example.downloader.util.AbstractWorker;
+import org.example.downloader.util.AbstractWorkerIterator;
+import org.example.downloader.util.ConcurrencyLimit;
+import org.example.downloader.util.ExecutionMode;
+import org.example.downloader.util.WorkerExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of dispatching and completing workers in WorkerExecutor, with
+ * thousands of jobs that each copy 1 KB, while a progress thread polls the executor like
+ * Action.progressWorker does. The jobs are so small that the time is spent in the executor.
+ * It lives in this package to create a WorkLogger.
+ *
+ * Run with: mvn -Pbenchmark compile exec:exec -Djmh.args="WorkerExecutorBenchmark"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkerExecutorBenchmark {
+
+    private static final int JOB_SIZE = 1024;
+    private static final byte[] PAYLOAD = new byte[JOB_SIZE];
+
+    @Param({"5000"})
+    public int jobs;
+
+    @Param({"8", "64"})
+    public int workers;
+
+    /**
+     * Interval of the progress thread polling the executor in microseconds.
+     */
+    @Param({"10000", "100"})
+    public int pollInterval;
+
+    private WorkLogger workLogger;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path dir = Files.createTempDirectory("executor-benchmark");
+        GeneralEnvironment ge = new GeneralEnvironment(dir.resolve("config.properties"));
+        ge.setCacheDir(dir);
+        workLogger = new WorkLogger(ge);
+        workLogger.getLogger().setLevel(java.util.logging.Level.WARNING);
+    }
+
+    private static class CopyJob extends AbstractWorker {
+        private final byte[] target = new byte[JOB_SIZE];
+
+        CopyJob(WorkLogger workLogger) {
+            super(workLogger);
+        }
+
+        @Override
+        public void run() {
+            System.arraycopy(PAYLOAD, 0, target, 0, JOB_SIZE);
+            reportProgress(JOB_SIZE);
+        }
+
+        @Override
+        protected void stopProcessImpl() {
+        }
+
+        @Override
+        public float getSpeed() {
+            return 0;
+        }
+
+        @Override
+        public float getTime() {
+            return 0;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return false;
+        }
+    }
+
+    @Benchmark
+    public long dispatch() throws InterruptedException {
+        AbstractWorkerIterator<CopyJob> iterator = new AbstractWorkerIterator<>() {
+            private int created = 0;
+
+            @Override
+            protected CopyJob createWorker() {
+                created++;
+                return new CopyJob(workLogger);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return created < jobs;
+            }
+        };
+        WorkerExecutor executor = new WorkerExecutor(
+                iterator, workLogger, 0, ConcurrencyLimit.fixed(workers), ExecutionMode.PLATFORM
+        );
+        executor.start();
+        long polled = 0;
+        while (executor.isRunning()) {
+            polled += executor.getCurrentTotalBytes();
+            TimeUnit.MICROSECONDS.sleep(pollInterval);
+        }
+        if (executor.getCurrentTotalBytes() != (long) jobs * JOB_SIZE) {
+            throw new IllegalStateException("Executor lost bytes: " + executor.getCurrentTotalBytes());
+        }
+        return polled;
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares the former 8 KB byte array loop with the channel copy used by DownloadHelper,
+ * over a simulated link of a given speed. On throttled links both should take as long as
+ * the link does, the counters show how many writes and digest updates each path needs.
+ * On an unthrottled link the raw copy throughput is compared.
+ *
+ * Run with: mvn -Pbenchmark compile exec:exec -Djmh.args="ChannelCopyBenchmark"
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ChannelCopyBenchmark {
+
+    private static final int PAYLOAD_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Link speed in megabits per second, 0 for an unthrottled link.
+     */
+    @Param({"10", "100", "1000", "0"})
+    public int linkSpeed;
+
+    private Path target;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long writes;
+        public long digestUpdates;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            writes = 0;
+            digestUpdates = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        target = Files.createTempFile("channel-copy", ".bin");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(target);
+    }
+
+    @Benchmark
+    public long byteArrayLoop(Counters counters) throws IOException {
+        IncrementalDigest digest = new IncrementalDigest();
+        try (
+                InputStream inputStream = new SimulatedLink(PAYLOAD_SIZE, linkSpeed);
+                RandomAccessFile outputFile = new RandomAccessFile(target.toFile(), "rw")
+        ) {
+            outputFile.setLength(0);
+            byte[] buffer = new byte[DownloadHelper.BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                outputFile.write(buffer, 0, bytesRead);
+                digest.update(buffer, 0, bytesRead);
+                counters.writes++;
+                counters.digestUpdates++;
+            }
+        }
+        return digest.getPosition();
+    }
+
+    @Benchmark
+    public long channelCopy(Counters counters) throws IOException {
+        IncrementalDigest digest = new IncrementalDigest();
+        try (
+                ReadableByteChannel inputChannel = Channels.newChannel(new SimulatedLink(PAYLOAD_SIZE, linkSpeed));
+                FileChannel outputChannel = FileChannel.open(target, StandardOpenOption.WRITE)
+        ) {
+            outputChannel.truncate(0);
+            ChannelCopier.copy(inputChannel, outputChannel, 0, Long.MAX_VALUE, () -> false, new ChannelCopier.Listener() {
+                @Override
+                public void onRead(ByteBuffer chunk) {
+                    digest.update(chunk);
+                    counters.digestUpdates++;
+                }
+
+                @Override
+                public void onWritten(long position, int length) {
+                    counters.writes++;
+                }
+            });
+        }
+        return digest.getPosition();
+    }
+
+    /**
+     * Stream delivering a fixed payload at a fixed rate, in whole packets and in reads
+     * no larger than a typical socket receive.
+     */
+    static class SimulatedLink extends InputStream {
+        private static final int PACKET_SIZE = 1460;
+        private static final int MAX_READ = 64 * 1024;
+
+        private final long size;
+        private final long bytesPerSecond;
+        private final long startTime = System.nanoTime();
+        private final byte[] pattern = new byte[MAX_READ];
+        private long delivered = 0;
+
+        SimulatedLink(long size, int megabitsPerSecond) {
+            this.size = size;
+            this.bytesPerSecond = megabitsPerSecond * 1_000_000L / 8;
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = (byte) (i * 31);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (delivered >= size) {
+                return -1;
+            }
+            long allowed = Math.min(size - delivered, Math.min(length, MAX_READ));
+            if (bytesPerSecond > 0) {
+                long packet = Math.min(allowed, PACKET_SIZE);
+                long available;
+                while ((available = arrived()) < packet) {
+                    LockSupport.parkNanos(100_000L);
+                }
+                allowed = Math.min(allowed, available / packet * packet);
+            }
+            System.arraycopy(pattern, 0, buffer, offset, (int) allowed);
+            delivered += allowed;
+            return (int) allowed;
+        }
+
+        @Override
+        public int available() {
+            if (delivered >= size) {
+                return 0;
+            }
+            if (bytesPerSecond == 0) {
+                return (int) Math.min(size - delivered, MAX_READ);
+            }
+            long available = arrived();
+            return available < PACKET_SIZE ? 0 : (int) Math.min(available, MAX_READ);
+        }
+
+        private long arrived() {
+            long arrived = (System.nanoTime() - startTime) * bytesPerSecond / 1_000_000_000L;
+            return Math.min(arrived, size) - delivered;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the former hexadecimal and digest routines of Sha256Helper, kept here as they
+ * were, with DigestHelper. The row hash benchmarks hash a blockchain row the way checking
+ * a chain does, which used all three of them for every row.
+ *
+ * Run with: mvn -Pbenchmark compile exec:exec -Djmh.args="DigestHelperBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DigestHelperBenchmark {
+
+    private byte[] digest;
+    private String hex;
+    private String rowData;
+    private BlockChainHelper.Row row;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        digest = new byte[DigestHelper.SHA256_LENGTH];
+        new Random(42).nextBytes(digest);
+        hex = DigestHelper.toHex(digest);
+        row = BlockChainHelper.rowFromArtifact("pool/main/o/openssl/libssl3_3.0.11-1_amd64.deb", "bookworm-amd64", hex);
+        rowData = String.format("%s,%s,%s,%s,%s", hex, row.getArtifact(), row.getMetadata(), row.getDigest(), row.getDatetime());
+    }
+
+    @Benchmark
+    public String legacyBytesToHex() {
+        return legacyBytesToHex(digest);
+    }
+
+    @Benchmark
+    public String toHex() {
+        return DigestHelper.toHex(digest);
+    }
+
+    @Benchmark
+    public boolean legacyIsValid64CharHex() {
+        return legacyIsValid64CharHex(hex);
+    }
+
+    @Benchmark
+    public boolean isHex64() {
+        return DigestHelper.isHex64(hex);
+    }
+
+    @Benchmark
+    public String legacyComputeHash() {
+        return legacyComputeHash(rowData);
+    }
+
+    @Benchmark
+    public String sha256Hex() {
+        return DigestHelper.sha256Hex(rowData);
+    }
+
+    @Benchmark
+    public String legacyRowHash() {
+        if (!legacyIsValid64CharHex(hex)) {
+            throw new IllegalArgumentException("Invalid previous hash: " + hex);
+        }
+        String newBlock = String.format("%s,%s,%s,%s,%s", hex.trim(), row.getArtifact(), row.getMetadata(), row.getDigest(), row.getDatetime());
+        return legacyComputeHash(newBlock);
+    }
+
+    @Benchmark
+    public String rowHash() {
+        return row.buildRowHash(hex);
+    }
+
+    private static String legacyBytesToHex(byte[] bytes) {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : bytes) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) {
+                hexString.append('0');
+            }
+            hexString.append(hex);
+        }
+        return hexString.toString();
+    }
+
+    private static String legacyComputeHash(String data) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] digest = md.digest(data.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                String h = Integer.toHexString(0xff & b);
+                if (h.length() == 1) hex.append('0');
+                hex.append(h);
+            }
+            return hex.toString().toLowerCase();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    private static boolean legacyIsValid64CharHex(String input) {
+        return input != null && input.matches("^[0-9a-fA-F]{64}$");
+    }
+}
@@ -14,7 +14,16 @@
  */
 package org.example.downloader;
 
+import org.example.downloader.util.BandwidthSchedule;
+import org.example.downloader.util.ConcurrencyLimit;
 import org.example.downloader.util.EnvironmentManager;
+import org.example.downloader.util.ExecutionMode;
+import org.example.downloader.util.HttpTransport;
+import org.example.downloader.util.SchedulingPolicy;
+import org.example.downloader.util.StallWatchdog;
+import org.example.downloader.util.VerificationMode;
+import org.example.downloader.util.VerificationOrder;
+import org.example.downloader.util.WorkerExecutor;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -25,6 +34,22 @@ public class GeneralEnvironment extends EnvironmentManager {
     public static String DIR_CACHE = "cache_dir";
     public final static String BLOCKCHAIN_DIR = "chain";
     public final static String LOGS_DIR = "logs";
+    public final static String HTTP_CACHE_DIR = "http-cache";
+    public final static String VERIFICATION_CACHE_DIR = "verification-cache";
+    public final static String PIECE_MANIFEST_DIR = "pieces";
+    public final static String HTTP_TRANSPORT = "http_transport";
+    public final static String BANDWIDTH_LIMIT = "bandwidth_limit";
+    public final static String RETRY_LIMIT = "retry_limit";
+    public final static String LOW_SPEED_LIMIT = "low_speed_limit";
+    public final static String LOW_SPEED_TIME = "low_speed_time";
+    public final static String CONCURRENCY_SUFFIX = "_concurrency";
+    public final static String EXECUTION_MODE = "execution_mode";
+    public final static String HOST_CONNECTION_LIMIT = "host_connection_limit";
+    public final static String SCHEDULING_POLICY = "scheduling_policy";
+    public final static String VERIFY_MODE = "verify_mode";
+    public final static String DEEP_SCAN_DAYS = "deep_scan_days";
+    public final static int DEFAULT_DEEP_SCAN_DAYS = 30;
+    public final static String VERIFY_ORDER = "verify_order";
 
 
     public GeneralEnvironment(Path configFilePath) {
@@ -50,4 +75,143 @@ public class GeneralEnvironment extends EnvironmentManager {
     public Path getLogsDir() {
         return getCacheDir().resolve(LOGS_DIR);
     }
+
+    public Path getHttpCacheDir() {
+        return getCacheDir().resolve(HTTP_CACHE_DIR);
+    }
+
+    public Path getPieceManifestDir() {
+        return getChainDir().resolve(PIECE_MANIFEST_DIR);
+    }
+
+    public Path getVerificationCacheDir() {
+        return getCacheDir().resolve(VERIFICATION_CACHE_DIR);
+    }
+
+    public HttpTransport.Engine getHttpTransport() {
+        return HttpTransport.Engine.fromString(get(HTTP_TRANSPORT, HttpTransport.Engine.POOLED.getName()));
+    }
+
+    public void setHttpTransport(HttpTransport.Engine engine) {
+        set(HTTP_TRANSPORT, engine.getName());
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return ExecutionMode.fromString(get(EXECUTION_MODE, ExecutionMode.PLATFORM.getName()));
+    }
+
+    public void setExecutionMode(ExecutionMode mode) {
+        set(EXECUTION_MODE, mode.getName());
+    }
+
+    public SchedulingPolicy getSchedulingPolicy() {
+        return SchedulingPolicy.fromString(get(SCHEDULING_POLICY, SchedulingPolicy.NATURAL.getName()));
+    }
+
+    public void setSchedulingPolicy(SchedulingPolicy policy) {
+        set(SCHEDULING_POLICY, policy.getName());
+    }
+
+    public BandwidthSchedule getBandwidthSchedule() {
+        return BandwidthSchedule.parse(get(BANDWIDTH_LIMIT, ""));
+    }
+
+    public void setBandwidthSchedule(BandwidthSchedule schedule) {
+        set(BANDWIDTH_LIMIT, schedule.toString());
+    }
+
+    public int getRetryLimit() {
+        try {
+            return Math.max(0, Integer.parseInt(get(RETRY_LIMIT, String.valueOf(WorkerExecutor.DEFAULT_RETRY_LIMIT)).trim()));
+        } catch (NumberFormatException e) {
+            return WorkerExecutor.DEFAULT_RETRY_LIMIT;
+        }
+    }
+
+    public void setRetryLimit(int retryLimit) {
+        set(RETRY_LIMIT, String.valueOf(retryLimit));
+    }
+
+    public VerificationMode getVerificationMode() {
+        return VerificationMode.fromString(get(VERIFY_MODE, VerificationMode.DEEP.getName()));
+    }
+
+    public void setVerificationMode(VerificationMode mode) {
+        set(VERIFY_MODE, mode.getName());
+    }
+
+    public VerificationOrder getVerificationOrder() {
+        return VerificationOrder.fromString(get(VERIFY_ORDER, VerificationOrder.LEDGER.getName()));
+    }
+
+    public void setVerificationOrder(VerificationOrder order) {
+        set(VERIFY_ORDER, order.getName());
+    }
+
+    public int getDeepScanDays() {
+        try {
+            return Math.max(0, Integer.parseInt(get(DEEP_SCAN_DAYS, String.valueOf(DEFAULT_DEEP_SCAN_DAYS)).trim()));
+        } catch (NumberFormatException e) {
+            return DEFAULT_DEEP_SCAN_DAYS;
+        }
+    }
+
+    public void setDeepScanDays(int deepScanDays) {
+        set(DEEP_SCAN_DAYS, String.valueOf(deepScanDays));
+    }
+
+    public int getHostConnectionLimit() {
+        try {
+            return Math.max(0, Integer.parseInt(get(HOST_CONNECTION_LIMIT, String.valueOf(WorkerExecutor.DEFAULT_HOST_CONNECTION_LIMIT)).trim()));
+        } catch (NumberFormatException e) {
+            return WorkerExecutor.DEFAULT_HOST_CONNECTION_LIMIT;
+        }
+    }
+
+    public void setHostConnectionLimit(int hostConnectionLimit) {
+        set(HOST_CONNECTION_LIMIT, String.valueOf(hostConnectionLimit));
+    }
+
+    public long getLowSpeedLimit() {
+        try {
+            return BandwidthSchedule.parseRate(get(LOW_SPEED_LIMIT, BandwidthSchedule.formatRate(StallWatchdog.DEFAULT_LOW_SPEED_LIMIT)));
+        } catch (IllegalArgumentException e) {
+            return StallWatchdog.DEFAULT_LOW_SPEED_LIMIT;
+        }
+    }
+
+    public void setLowSpeedLimit(long lowSpeedLimit) {
+        set(LOW_SPEED_LIMIT, BandwidthSchedule.formatRate(lowSpeedLimit));
+    }
+
+    public int getLowSpeedTime() {
+        try {
+            return Math.max(1, Integer.parseInt(get(LOW_SPEED_TIME, String.valueOf(StallWatchdog.DEFAULT_LOW_SPEED_TIME)).trim()));
+        } catch (NumberFormatException e) {
+            return StallWatchdog.DEFAULT_LOW_SPEED_TIME;
+        }
+    }
+
+    public void setLowSpeedTime(int lowSpeedTime) {
+        set(LOW_SPEED_TIME, String.valueOf(lowSpeedTime));
+    }
+
+    /**
+     * Gets the concurrency limit of a workload, configured as "<workload>_concurrency".
+     *
+     * @param workload     The name of the workload, such as "debian_download".
+     * @param defaultLimit The limit used when none, or an invalid one, is configured.
+     * @return The concurrency limit.
+     */
+    public ConcurrencyLimit getConcurrencyLimit(String workload, ConcurrencyLimit defaultLimit) {
+        try {
+            return ConcurrencyLimit.parse(get(workload + CONCURRENCY_SUFFIX, ""), defaultLimit);
+        } catch (IllegalArgumentException e) {
+            return defaultLimit;
+        }
+    }
+
+    public void setConcurrencyLimit(String workload, ConcurrencyLimit limit) {
+        set(workload + CONCURRENCY_SUFFIX, limit.toString());
+    }
 }
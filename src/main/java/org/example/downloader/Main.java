@@ -15,6 +15,8 @@
 package org.example.downloader;
 
 import org.example.downloader.ui.MainMenu;
+import org.example.downloader.util.DownloadHelper;
+import org.example.downloader.util.HttpCache;
 import org.example.downloader.util.InversionOfControl;
 
 import java.io.*;
@@ -28,6 +30,13 @@ public class Main {
 
     public static void main(String[] args) throws Exception {
         initializeIoC(args);
+        DownloadHelper.setTransport(ioc.resolve(GeneralEnvironment.class).getHttpTransport().create());
+        DownloadHelper.getBandwidthLimiter().setSchedule(ioc.resolve(GeneralEnvironment.class).getBandwidthSchedule());
+        DownloadHelper.getStallWatchdog().setLimit(
+                ioc.resolve(GeneralEnvironment.class).getLowSpeedLimit(),
+                ioc.resolve(GeneralEnvironment.class).getLowSpeedTime()
+        );
+        DownloadHelper.setHttpCache(new HttpCache(ioc.resolve(GeneralEnvironment.class).getHttpCacheDir()));
 
         MainMenu menu = new MainMenu(ioc);
         menu.runMenu();
@@ -14,6 +14,8 @@
  */
 package org.example.downloader;
 
+import org.example.downloader.util.DownloadHelper;
+import org.example.downloader.util.MultiDigestVerifier;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -29,7 +31,6 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.MessageDigest;
 import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -410,7 +411,7 @@ public class MavenDependencyDownloader {
                 }
 
                 // Download POM from the specified repository
-                try (InputStream pomInputStream = new URL(resolvedPomPath).openStream();
+                try (InputStream pomInputStream = DownloadHelper.openStream(new URL(resolvedPomPath));
                      FileOutputStream fos = new FileOutputStream(cachePath.toFile())) {
                     fos.getChannel().transferFrom(Channels.newChannel(pomInputStream), 0, Long.MAX_VALUE);
                     System.out.println("Downloaded to cache from " + repoBaseUrl + ": " + cachePath);
@@ -514,7 +515,7 @@ public class MavenDependencyDownloader {
             }
 
             // Download POM from the repository
-            try (InputStream pomInputStream = new URL(url).openStream();
+            try (InputStream pomInputStream = DownloadHelper.openStream(new URL(url));
                  FileOutputStream fos = new FileOutputStream(cachePath.toFile())) {
                 fos.getChannel().transferFrom(Channels.newChannel(pomInputStream), 0, Long.MAX_VALUE);
                 System.out.println("Downloaded to cache from " + repo + ": " + cachePath);
@@ -577,7 +578,7 @@ public class MavenDependencyDownloader {
         try {
             Files.createDirectories(cachePath.getParent());
             URL url = new URL(artifactUrl);
-            try (ReadableByteChannel rbc = Channels.newChannel(url.openStream());
+            try (ReadableByteChannel rbc = Channels.newChannel(DownloadHelper.openStream(url));
                  FileOutputStream fos = new FileOutputStream(cachePath.toFile())) {
                 fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
                 System.out.println("Downloaded to cache from " + repo + ": " + cachePath);
@@ -610,7 +611,7 @@ public class MavenDependencyDownloader {
                 // Download hash/signature file
                 Files.createDirectories(hashCachePath.getParent());
                 URL url = new URL(hashUrl);
-                try (ReadableByteChannel rbc = Channels.newChannel(url.openStream());
+                try (ReadableByteChannel rbc = Channels.newChannel(DownloadHelper.openStream(url));
                      FileOutputStream fos = new FileOutputStream(hashCachePath.toFile())) {
                     fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
                     System.out.println("Downloaded to cache from " + repo + ": " + hashCachePath);
@@ -623,35 +624,23 @@ public class MavenDependencyDownloader {
 
     private static void verifyFile(Path filePath, String groupPath, String artifactId, String version, String fileName) {
         try {
-            // Compute MD5 and SHA1 hashes
-            String computedMd5 = computeHash(filePath, "MD5");
-            String computedSha1 = computeHash(filePath, "SHA-1");
-
-            // Verify MD5
+            // Both hashes are computed from one read of the file
             Path md5Path = Paths.get(CACHE_DIR, groupPath, artifactId, version, fileName + ".md5");
+            Path sha1Path = Paths.get(CACHE_DIR, groupPath, artifactId, version, fileName + ".sha1");
+            MultiDigestVerifier verifier = new MultiDigestVerifier(filePath);
             if (Files.exists(md5Path)) {
-                String expectedMd5 = new String(Files.readAllBytes(md5Path)).trim();
-                if (computedMd5.equalsIgnoreCase(expectedMd5)) {
-                    System.out.println("Verified MD5 for: " + filePath);
-                } else {
-                    System.err.println("Verification failed for " + filePath + ".md5: expected " + expectedMd5 + ", got " + computedMd5);
-                }
-            } else {
-                System.out.println("MD5 file not found for: " + filePath + " (skipping verification)");
+                verifier.expect(MultiDigestVerifier.MD5, new String(Files.readAllBytes(md5Path)).trim());
             }
-
-            // Verify SHA1
-            Path sha1Path = Paths.get(CACHE_DIR, groupPath, artifactId, version, fileName + ".sha1");
             if (Files.exists(sha1Path)) {
-                String expectedSha1 = new String(Files.readAllBytes(sha1Path)).trim();
-                if (computedSha1.equalsIgnoreCase(expectedSha1)) {
-                    System.out.println("Verified SHA1 for: " + filePath);
-                } else {
-                    System.err.println("Verification failed for " + filePath + ".sha1: expected " + expectedSha1 + ", got " + computedSha1);
-                }
-            } else {
-                System.out.println("SHA1 file not found for: " + filePath + " (skipping verification)");
+                verifier.expect(MultiDigestVerifier.SHA1, new String(Files.readAllBytes(sha1Path)).trim());
             }
+            verifier.verify();
+
+            // Verify MD5
+            reportDigest(verifier, MultiDigestVerifier.MD5, "MD5", filePath);
+
+            // Verify SHA1
+            reportDigest(verifier, MultiDigestVerifier.SHA1, "SHA1", filePath);
 
             // Note: Skipping .asc verification (requires external GPG libraries)
             Path ascPath = Paths.get(CACHE_DIR, groupPath, artifactId, version, fileName + ".asc");
@@ -663,21 +652,15 @@ public class MavenDependencyDownloader {
         }
     }
 
-    private static String computeHash(Path filePath, String algorithm) throws Exception {
-        MessageDigest digest = MessageDigest.getInstance(algorithm);
-        try (InputStream is = Files.newInputStream(filePath)) {
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                digest.update(buffer, 0, bytesRead);
-            }
-        }
-        byte[] hashedBytes = digest.digest();
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hashedBytes) {
-            sb.append(String.format("%02x", b));
+    private static void reportDigest(MultiDigestVerifier verifier, String algorithm, String name, Path filePath) {
+        String expected = verifier.getExpected(algorithm);
+        if (expected == null) {
+            System.out.println(name + " file not found for: " + filePath + " (skipping verification)");
+        } else if (verifier.matches(algorithm)) {
+            System.out.println("Verified " + name + " for: " + filePath);
+        } else {
+            System.err.println("Verification failed for " + filePath + "." + name.toLowerCase() + ": expected " + expected + ", got " + verifier.getComputed(algorithm));
         }
-        return sb.toString();
     }
 
     private static String constructPomUrl(String repo, String groupId, String artifactId, String version) {
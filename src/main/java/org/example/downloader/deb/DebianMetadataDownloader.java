@@ -21,9 +21,11 @@ import org.example.downloader.util.*;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
@@ -56,7 +58,7 @@ public class DebianMetadataDownloader extends AbstractWorkerIterator<DebianMetad
 
     private final AtomicLong totalBytes = new AtomicLong();
     private Iterator<Pair<BasePackageImpl, DownloadHelper.Download>> metadataTasks;
-    private final AtomicReference<List<DownloadHelper.Download>> incompleteDownloads = new AtomicReference<>(new ArrayList<>());
+    private final AtomicReference<List<DownloadHelper.Download>> incompleteDownloads = new AtomicReference<>(Collections.synchronizedList(new ArrayList<>()));
 
     public DebianMetadataDownloader(GeneralEnvironment ge, DebianDownloadEnvironment dde, WorkLogger workLogger) {
         this.ge = ge;
@@ -68,7 +70,9 @@ public class DebianMetadataDownloader extends AbstractWorkerIterator<DebianMetad
     @Override
     protected MetadataWorker createWorker() {
         Pair<BasePackageImpl, DownloadHelper.Download> pair = metadataTasks.next();
-        return new MetadataWorker(pair.getFirst(), pair.getSecond(), workLogger);
+        MetadataWorker worker = new MetadataWorker(pair.getFirst(), pair.getSecond(), workLogger);
+        worker.setIncompleteDownloads(incompleteDownloads.get());
+        return worker;
     }
 
     @Override
@@ -80,22 +84,18 @@ public class DebianMetadataDownloader extends AbstractWorkerIterator<DebianMetad
         return totalBytes.get();
     }
 
-    public void downloadFile(String filePath, List<Pair<BasePackageImpl, DownloadHelper.Download>> metadataTasks) {
-        //String comp = component.getComp();
-        //String url = String.format(PACKAGE_URL, dde.getDistribution().getDist(), comp, dde.getArchitecture().getArch());
-
+    public void addMetadataTask(String filePath, long byteSize, String sha256Digest, List<Pair<BasePackageImpl, DownloadHelper.Download>> metadataTasks) {
         try {
             Path outputFile = dde.getDownloadDir().resolve(filePath);
             Files.createDirectories(dde.getDownloadDir());
             Files.createDirectories(outputFile.getParent());
 
             URL realUrl = URI.create(REPO_URL + filePath).toURL();
-            long byteSize = DownloadHelper.queryUrlFileDownloadSize(realUrl);
 
             totalBytes.addAndGet(byteSize);
 
             metadataTasks.add(new Pair<>(
-                    new BasePackageImpl(filePath, String.valueOf(byteSize), "n/a"),
+                    new BasePackageImpl(filePath, String.valueOf(byteSize), sha256Digest),
                     new DownloadHelper.Download(realUrl, outputFile)
             ));
         } catch (IOException e) {
@@ -103,48 +103,81 @@ public class DebianMetadataDownloader extends AbstractWorkerIterator<DebianMetad
         }
     }
 
+    /**
+     * Adds an index file with the size and digest listed for it in the release index,
+     * files the distribution does not provide are skipped.
+     */
+    private void addIndexedTask(DebianReleaseIndex index, String distDir, String path, List<Pair<BasePackageImpl, DownloadHelper.Download>> metadataTasks) {
+        DebianReleaseIndex.Entry entry = index.get(path);
+        if (entry == null) {
+            workLogger.getLogger().info("Metadata " + distDir + path + " not listed in release, skipped.");
+            return;
+        }
+        addMetadataTask(distDir + path, entry.getSize(), entry.getSha256Digest(), metadataTasks);
+    }
+
+    /**
+     * Adds a release file, which is not listed in the release index. It has no digest, so it is
+     * only checked to exist once downloaded, and it is refreshed by its worker like any other
+     * metadata instead of asking the server for its size up front.
+     *
+     * @param byteSize The expected size for the progress, 0 if not known.
+     */
+    private void addUnlistedTask(String path, long byteSize, List<Pair<BasePackageImpl, DownloadHelper.Download>> metadataTasks) {
+        addMetadataTask(path, byteSize, "", metadataTasks);
+    }
+
+    /**
+     * Refreshes the InRelease file in the download directory, it is needed before any other
+     * metadata can be listed and is not downloaded again by a worker.
+     *
+     * @return The content of the InRelease file.
+     */
+    private String refreshInRelease(String distDir) throws IOException {
+        Path inReleaseFile = dde.getDownloadDir().resolve(distDir + "InRelease");
+        DownloadHelper.Download download = new DownloadHelper.Download(URI.create(REPO_URL + distDir + "InRelease").toURL(), inReleaseFile);
+        DownloadHelper.refreshDownload(download, workLogger);
+        if (!download.isComplete()) {
+            throw new IOException("Failed to download " + download.getUrl());
+        }
+        return new String(Files.readAllBytes(inReleaseFile), StandardCharsets.UTF_8);
+    }
+
     public void prepareMetadataTasks() {
         List<Pair<BasePackageImpl, DownloadHelper.Download>> metadataTasks = new ArrayList<>();
 
         try {
-            // Download InRelease
-            downloadFile("dists/" + dde.getDistribution().getDist() + "/InRelease", metadataTasks);
-            downloadFile("dists/" + dde.getDistribution().getDist() + "/Release", metadataTasks);
-            downloadFile("dists/" + dde.getDistribution().getDist() + "/Release.gpg", metadataTasks);
+            String distDir = "dists/" + dde.getDistribution().getDist() + "/";
+            String arch = dde.getArchitecture().getArch();
 
-            // Download index files for each component
-            for (String component : DebianComponent.toStringList()) {
-                // Packages.gz (already present, but included for completeness)
-                String packagesUrl = "dists/" + dde.getDistribution().getDist() + "/" + component + "/binary-" + dde.getArchitecture().getArch() + "/Packages.gz";
-                downloadFile(packagesUrl, metadataTasks);
+            // InRelease lists size and digest of every index file, so no index file has to be queried
+            String inRelease = refreshInRelease(distDir);
+            DebianReleaseIndex index = DebianReleaseIndex.parse(inRelease);
 
-                String packagesAllUrl = "dists/" + dde.getDistribution().getDist() + "/" + component + "/binary-all/Packages.gz";
-                downloadFile(packagesAllUrl, metadataTasks);
+            // The release files themselves are not listed, Release is InRelease without its
+            // signature, so its size is close to that, and the detached signature is small
+            addUnlistedTask(distDir + "Release", inRelease.length(), metadataTasks);
+            addUnlistedTask(distDir + "Release.gpg", 0, metadataTasks);
 
-                String releaseAllUrl = "dists/" + dde.getDistribution().getDist() + "/" + component + "/binary-all/Release";
-                downloadFile(releaseAllUrl, metadataTasks);
+            // Download index files for each component
+            for (String component : DebianComponent.toStringList()) {
+                addIndexedTask(index, distDir, component + "/binary-" + arch + "/Packages.gz", metadataTasks);
+                addIndexedTask(index, distDir, component + "/binary-all/Packages.gz", metadataTasks);
+                addIndexedTask(index, distDir, component + "/binary-all/Release", metadataTasks);
 
-                // Translation-en.gz
-                String translationUrl = "dists/" + dde.getDistribution().getDist() + "/" + component + "/i18n/Translation-en.xz";
-                downloadFile(translationUrl, metadataTasks);
+                // Translation-en.xz
+                addIndexedTask(index, distDir, component + "/i18n/Translation-en.xz", metadataTasks);
 
                 // Contents-amd64.gz
-                String contentsUrl = "dists/" + dde.getDistribution().getDist() + "/" + component + "/Contents-" + dde.getArchitecture().getArch() + ".gz";
-                downloadFile(contentsUrl, metadataTasks);
-
-                String contentsAllUrl = "dists/" + dde.getDistribution().getDist() + "/" + component + "/Contents-all.gz";
-                downloadFile(contentsAllUrl, metadataTasks);
+                addIndexedTask(index, distDir, component + "/Contents-" + arch + ".gz", metadataTasks);
+                addIndexedTask(index, distDir, component + "/Contents-all.gz", metadataTasks);
 
                 // AppStream for GUI support
-                String componentsUrl = "dists/" + dde.getDistribution().getDist() + "/" + component + "/dep11/Components-" + dde.getArchitecture().getArch() + ".yml.gz";
-                downloadFile(componentsUrl, metadataTasks);
-
-                String cidIndexUrl = "dists/" + dde.getDistribution().getDist() + "/" + component + "/dep11/CID-Index-" + dde.getArchitecture().getArch() + ".json.gz";
-                downloadFile(cidIndexUrl, metadataTasks);
+                addIndexedTask(index, distDir, component + "/dep11/Components-" + arch + ".yml.gz", metadataTasks);
+                addIndexedTask(index, distDir, component + "/dep11/CID-Index-" + arch + ".json.gz", metadataTasks);
 
                 for (String size : ICON_SIZES) {
-                    String iconsUrl = "dists/" + dde.getDistribution().getDist() + "/" + component + "/dep11/icons-" + size + ".tar.gz";
-                    downloadFile(iconsUrl, metadataTasks);
+                    addIndexedTask(index, distDir, component + "/dep11/icons-" + size + ".tar.gz", metadataTasks);
                 }
             }
         } catch (Exception e) {
@@ -220,37 +253,71 @@ public class DebianMetadataDownloader extends AbstractWorkerIterator<DebianMetad
             super(basePackage, downloadTask, logger);
         }
 
+        /**
+         * Metadata changes on the server, so an existing copy is never taken as final but
+         * refreshed with a conditional request instead.
+         */
+        @Override
+        protected boolean isFullyDownloaded(Path downloadPath) {
+            return downloadTask.isComplete() && Files.exists(downloadPath);
+        }
+
+        @Override
+        protected long transfer() {
+            return DownloadHelper.refreshDownload(downloadTask, workLogger);
+        }
+
+        @Override
+        public WorkPriority getPriority() {
+            return WorkPriority.URGENT;
+        }
+
+        /**
+         * Index files are verified against the digest listed in the release index, the
+         * release files themselves have no listed digest and only need to exist.
+         */
         @Override
         protected boolean verifySha256Digest() throws IOException {
-            return Files.exists(downloadTask.getFilePath());
+            if (!DigestHelper.isHex64(basePackage.getSha256Digest())) {
+                return Files.exists(downloadTask.getFilePath());
+            }
+            return super.verifySha256Digest();
         }
 
         @Override
         protected void doWhenDownloadVerifiedSuccessful() throws IOException {
+            if (downloadTask.isNotModified()) {
+                logger.info("Metadata " + basePackage.uniqueKey() + " not modified since last download.");
+                return;
+            }
             logger.warning("Download of " + basePackage.uniqueKey() + " registered to blockchain.");
         }
 
         @Override
         protected void doWhenDownloadVerifiedFailure() throws IOException {
+            Files.deleteIfExists(downloadTask.getFilePath());
             logger.warning("File of download " + basePackage.uniqueKey() + " deleted due to failed verification.");
         }
 
         @Override
         protected void doWhenTimedOut() throws IOException {
-            incompleteDownloads.get().add(downloadTask);
             System.out.println("Download timed out for " + basePackage.uniqueKey());
         }
 
         @Override
         protected void doWhenError() throws IOException {
-            incompleteDownloads.get().add(downloadTask);
             System.out.println("Download errored for " + basePackage.uniqueKey());
         }
 
         @Override
         protected void doWhenUnexpected() throws IOException {
-            incompleteDownloads.get().add(downloadTask);
+            recordIncompleteIfStopped();
             System.out.println("Something unexpected for " + basePackage.uniqueKey());
         }
+
+        @Override
+        protected MetadataWorker createRetryWorker() {
+            return new MetadataWorker(basePackage, new DownloadHelper.Download(downloadTask.getUrl(), downloadTask.getFilePath()), workLogger);
+        }
     }
 }
@@ -17,12 +17,14 @@ package org.example.downloader.deb;
 import org.example.downloader.GeneralEnvironment;
 
 import java.io.*;
+import java.net.URI;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -47,12 +49,58 @@ public class DebianMirrorCache {
         loadBadMirrors();
     }
 
-    public String getNextMirror() {
+    public synchronized String getNextMirror() {
         current++;
         return mirrors.get((int) (current % mirrors.size()));
     }
 
-    public int mirrorCount() {
+    /**
+     * Gets the next mirror that is not the given one, used to retry a download elsewhere.
+     *
+     * @param avoid The mirror to avoid.
+     * @return Another mirror, or the given one if no other mirror is left.
+     */
+    public synchronized String getNextMirror(String avoid) {
+        for (int i = 0; i < mirrors.size(); i++) {
+            String mirror = getNextMirror();
+            if (!mirror.equals(avoid)) {
+                return mirror;
+            }
+        }
+        return avoid;
+    }
+
+    /**
+     * Gets the next mirror accepted by a filter, such as one whose host is not saturated.
+     *
+     * @param accept Tells whether a mirror may be used.
+     * @return The next accepted mirror, or the next mirror if none is accepted.
+     */
+    public synchronized String getNextMirror(Predicate<String> accept) {
+        for (int i = 0; i < mirrors.size(); i++) {
+            String mirror = getNextMirror();
+            if (accept.test(mirror)) {
+                return mirror;
+            }
+        }
+        return getNextMirror();
+    }
+
+    /**
+     * Gets the host name of a mirror.
+     *
+     * @param mirror The base URL of the mirror.
+     * @return The host name, or null if the URL has none.
+     */
+    public static String hostOf(String mirror) {
+        try {
+            return URI.create(mirror).getHost();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public synchronized int mirrorCount() {
         return mirrors.size();
     }
 
@@ -144,7 +192,7 @@ public class DebianMirrorCache {
         }
     }
 
-    public void reportBadMirror(String mirror) {
+    public synchronized void reportBadMirror(String mirror) {
         if (mirrors.remove(mirror)) {
             Collections.shuffle(this.mirrors);
             badMirrors.add(mirror);
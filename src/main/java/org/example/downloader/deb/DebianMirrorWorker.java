@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.deb;
+
+import org.example.downloader.WorkLogger;
+import org.example.downloader.util.BlockChainHelper;
+import org.example.downloader.util.DownloadHelper;
+import org.example.downloader.util.Worker;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.function.Predicate;
+
+/**
+ * Downloads a Debian package from one of the mirrors. A mirror that fails a download is
+ * reported as bad, unless the transfer was only aborted by the stall watchdog, and the
+ * download is retried from another mirror, preferably one whose host has a free connection,
+ * resuming the same partial file.
+ */
+public abstract class DebianMirrorWorker extends Worker<DebianPackage> {
+
+    protected final BlockChainHelper.Blockchain chain;
+    protected final DebianMirrorCache mirrors;
+    protected final String baseUrl;
+    private final Predicate<String> hostAvailable;
+
+    /**
+     * @param hostAvailable Tells whether a host has a free connection for a retry.
+     */
+    protected DebianMirrorWorker(
+            DebianPackage basePackage,
+            DownloadHelper.Download downloadTask,
+            BlockChainHelper.Blockchain chain,
+            DebianMirrorCache mirrors,
+            WorkLogger logger,
+            String baseUrl,
+            Predicate<String> hostAvailable
+    ) {
+        super(basePackage, downloadTask, logger);
+        this.chain = chain;
+        this.mirrors = mirrors;
+        this.baseUrl = baseUrl;
+        this.hostAvailable = hostAvailable;
+    }
+
+    /**
+     * Creates a worker of the same kind for the download from another mirror.
+     *
+     * @param downloadTask The download from the other mirror.
+     * @param retryUrl     The base URL of the other mirror.
+     * @return The worker.
+     */
+    protected abstract DebianMirrorWorker createMirrorWorker(DownloadHelper.Download downloadTask, String retryUrl);
+
+    @Override
+    protected void doWhenDownloadVerifiedSuccessful() throws IOException {
+        if(chain != null) {
+            chain.addRow(basePackage.uniqueKey(), basePackage.getFilename(), basePackage.getSha256Digest());
+            logger.warning("Download of " + basePackage.uniqueKey() + " registered to blockchain.");
+        }
+    }
+
+    @Override
+    protected void doWhenDownloadVerifiedFailure() throws IOException {
+        Files.deleteIfExists(downloadTask.getFilePath());
+        logger.warning("File of download " + basePackage.uniqueKey() + " deleted due to failed verification.");
+    }
+
+    @Override
+    protected void doWhenTimedOut() throws IOException {
+        // A transfer aborted for a slow stretch is retried elsewhere, the mirror is not given up for it
+        if (!downloadTask.hasStalled()) {
+            mirrors.reportBadMirror(baseUrl);
+        }
+        logger.info("Download timed out for " + basePackage.uniqueKey());
+    }
+
+    @Override
+    protected void doWhenError() throws IOException {
+        mirrors.reportBadMirror(baseUrl);
+        logger.warning("Download errored for " + basePackage.uniqueKey());
+    }
+
+    @Override
+    protected void doWhenUnexpected() throws IOException {
+        recordIncompleteIfStopped();
+        mirrors.reportBadMirror(baseUrl);
+        logger.warning("Something unexpected for " + basePackage.uniqueKey());
+    }
+
+    @Override
+    protected DebianMirrorWorker createRetryWorker() {
+        try {
+            // Resume the partial file from another mirror, preferably one with a free connection
+            String retryUrl = mirrors.getNextMirror(
+                    mirror -> !mirror.equals(baseUrl) && hostAvailable.test(DebianMirrorCache.hostOf(mirror))
+            );
+            if (retryUrl.equals(baseUrl)) {
+                retryUrl = mirrors.getNextMirror(baseUrl);
+            }
+            return createMirrorWorker(
+                    new DownloadHelper.Download(
+                            URI.create(basePackage.buildDownloadUrl(retryUrl)).toURL(),
+                            downloadTask.getFilePath()
+                    ),
+                    retryUrl
+            );
+        } catch (MalformedURLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.deb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The index files of a distribution as listed in the SHA256 field of its Release or
+ * InRelease file, with paths relative to the directory of the Release file.
+ */
+public class DebianReleaseIndex {
+
+    private static final String SHA256_FIELD = "SHA256:";
+
+    private final Map<String, Entry> entries;
+
+    private DebianReleaseIndex(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static class Entry {
+        private final long size;
+        private final String sha256Digest;
+
+        Entry(long size, String sha256Digest) {
+            this.size = size;
+            this.sha256Digest = sha256Digest;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getSha256Digest() {
+            return sha256Digest;
+        }
+    }
+
+    /**
+     * Parses the content of a Release file, a clearsigned InRelease file is accepted as is.
+     *
+     * @param content The content of the Release or InRelease file.
+     * @return The index files listed with a SHA-256 digest.
+     */
+    public static DebianReleaseIndex parse(String content) {
+        Map<String, Entry> entries = new HashMap<>();
+        boolean inSha256 = false;
+        for (String line : content.split("\n")) {
+            line = line.replace("\r", "");
+            if (line.startsWith(" ")) {
+                if (inSha256) {
+                    String[] parts = line.trim().split("\\s+");
+                    if (parts.length == 3) {
+                        try {
+                            entries.put(parts[2], new Entry(Long.parseLong(parts[1]), parts[0]));
+                        } catch (NumberFormatException e) {
+                            // Not an index line, skip it
+                        }
+                    }
+                }
+            } else {
+                inSha256 = line.startsWith(SHA256_FIELD);
+            }
+        }
+        return new DebianReleaseIndex(entries);
+    }
+
+    /**
+     * Looks up an index file.
+     *
+     * @param path The path relative to the directory of the Release file.
+     * @return The size and digest of the file, or null if it is not listed.
+     */
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
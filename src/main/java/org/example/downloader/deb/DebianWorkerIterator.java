@@ -18,14 +18,11 @@ import org.example.downloader.GeneralEnvironment;
 import org.example.downloader.WorkLogger;
 import org.example.downloader.util.*;
 
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class DebianWorkerIterator extends WorkerIterator<DebianPackage> {
 
@@ -35,8 +32,6 @@ public class DebianWorkerIterator extends WorkerIterator<DebianPackage> {
     private final BlockChainHelper.Blockchain chain;
     private final DebianMirrorCache mirrors;
 
-    private final AtomicReference<List<DownloadHelper.Download>> incompleteDownloads = new AtomicReference<>(new ArrayList<>());
-
     public DebianWorkerIterator(
             GeneralEnvironment ge,
             DebianDownloadEnvironment dde,
@@ -45,7 +40,7 @@ public class DebianWorkerIterator extends WorkerIterator<DebianPackage> {
             WorkLogger logger
     ) {
         this.dde = dde;
-        this.packageIterator = packages.values().iterator();
+        this.packageIterator = ge.getSchedulingPolicy().order(packages.values()).iterator();
         this.chain = chain;
         this.logger = logger;
 
@@ -57,7 +52,7 @@ public class DebianWorkerIterator extends WorkerIterator<DebianPackage> {
     protected DebianWorkerIterator.DebianWorker createWorker() {
         DebianPackage pkg = packageIterator.next();
         try {
-            String baseUrl = mirrors.getNextMirror();
+            String baseUrl = mirrors.getNextMirror(mirror -> isHostAvailable(DebianMirrorCache.hostOf(mirror)));
             URL downloadURL = URI.create(pkg.buildDownloadUrl(baseUrl)).toURL();
             Path downloadPath = pkg.buildSavePath(dde);
 
@@ -82,15 +77,7 @@ public class DebianWorkerIterator extends WorkerIterator<DebianPackage> {
         return packageIterator.hasNext();
     }
 
-    public List<DownloadHelper.Download> getIncompleteDownloads() {
-        return incompleteDownloads.get();
-    }
-
-    public class DebianWorker extends Worker<DebianPackage> {
-
-        private final BlockChainHelper.Blockchain chain;
-        private final DebianMirrorCache mirrors;
-        private final String baseUrl;
+    public class DebianWorker extends DebianMirrorWorker {
 
         public DebianWorker(
                 DebianPackage basePackage,
@@ -100,45 +87,12 @@ public class DebianWorkerIterator extends WorkerIterator<DebianPackage> {
                 WorkLogger logger,
                 String baseUrl
         ) {
-            super(basePackage, downloadTask, logger);
-            this.chain = chain;
-            this.mirrors = mirrors;
-            this.baseUrl = baseUrl;
-        }
-
-        @Override
-        protected void doWhenDownloadVerifiedSuccessful() throws IOException {
-            if(chain != null) {
-                chain.addRow(basePackage.uniqueKey(), basePackage.getFilename(), basePackage.getSha256Digest());
-                logger.warning("Download of " + basePackage.uniqueKey() + " registered to blockchain.");
-            }
-        }
-
-        @Override
-        protected void doWhenDownloadVerifiedFailure() throws IOException {
-            Files.deleteIfExists(downloadTask.getFilePath());
-            logger.warning("File of download " + basePackage.uniqueKey() + " deleted due to failed verification.");
-        }
-
-        @Override
-        protected void doWhenTimedOut() throws IOException {
-            incompleteDownloads.get().add(downloadTask);
-            mirrors.reportBadMirror(baseUrl);
-            logger.info("Download timed out for " + basePackage.uniqueKey());
-        }
-
-        @Override
-        protected void doWhenError() throws IOException {
-            incompleteDownloads.get().add(downloadTask);
-            mirrors.reportBadMirror(baseUrl);
-            logger.warning("Download errored for " + basePackage.uniqueKey());
+            super(basePackage, downloadTask, chain, mirrors, logger, baseUrl, DebianWorkerIterator.this::isHostAvailable);
         }
 
         @Override
-        protected void doWhenUnexpected() throws IOException {
-            incompleteDownloads.get().add(downloadTask);
-            mirrors.reportBadMirror(baseUrl);
-            logger.warning("Something unexpected for " + basePackage.uniqueKey());
+        protected DebianWorker createMirrorWorker(DownloadHelper.Download downloadTask, String retryUrl) {
+            return new DebianWorker(basePackage, downloadTask, chain, mirrors, workLogger, retryUrl);
         }
     }
-}
\ No newline at end of file
+}
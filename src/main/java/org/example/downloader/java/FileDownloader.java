@@ -14,15 +14,22 @@
  */
 package org.example.downloader.java;
 
-import java.io.FileOutputStream;
+import org.example.downloader.util.ChannelCopier;
+import org.example.downloader.util.DownloadHelper;
+import org.example.downloader.util.HttpTransport;
+
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 public class FileDownloader {
@@ -39,15 +46,11 @@ public class FileDownloader {
                 throw new IOException("Circular redirect detected for URL: " + currentUrl);
             }
 
-            // Set up the connection
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET"); // Use GET to download the file
-            connection.setInstanceFollowRedirects(false); // Handle redirects manually
-            connection.setConnectTimeout(5000); // 5 seconds timeout
-            connection.setReadTimeout(5000);
+            // Set up the connection, redirects are handled manually
+            HttpTransport.Response connection = DownloadHelper.getTransport().request(url, "GET", Map.of(), false);
 
             // Get response code
-            int responseCode = connection.getResponseCode();
+            int responseCode = connection.getStatusCode();
 
             if (responseCode == HttpURLConnection.HTTP_OK) {
                 // Extract filename from URL or Content-Disposition header
@@ -55,35 +58,34 @@ public class FileDownloader {
                 Path outputPath = outputDir.resolve(fileName);
 
                 // Download the file
-                try (InputStream in = connection.getInputStream();
-                     FileOutputStream out = new FileOutputStream(outputPath.toFile())) {
-                    byte[] buffer = new byte[8192];
-                    int bytesRead;
-                    while ((bytesRead = in.read(buffer)) != -1) {
-                        out.write(buffer, 0, bytesRead);
-                    }
+                try (ReadableByteChannel in = Channels.newChannel(connection.getBody());
+                     FileChannel out = FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ChannelCopier.copy(in, out, 0, Long.MAX_VALUE, () -> false,
+                            chunk -> DownloadHelper.getBandwidthLimiter().acquire(chunk.remaining(), () -> false));
                 }
 
                 System.out.println("File downloaded to: " + outputPath);
-                connection.disconnect();
+                connection.close();
                 return; // Download complete
             } else if (isRedirect(responseCode)) {
+                // Get the redirect location
+                String location = connection.getHeader("Location");
+                connection.close();
+
                 redirectCount++;
                 if (redirectCount > maxRedirects) {
                     throw new IOException("Maximum redirect limit (" + maxRedirects + ") exceeded for URL: " + url);
                 }
 
-                // Get the redirect location
-                String location = connection.getHeaderField("Location");
                 if (location == null || location.isEmpty()) {
                     throw new IOException("Redirect response code " + responseCode + " but no Location header found for URL: " + url);
                 }
 
                 // Resolve the new URL
                 url = new URL(url, location);
-                connection.disconnect();
                 continue; // Follow the redirect
             } else {
+                connection.close();
                 throw new IOException("Failed to download file, HTTP response code: " + responseCode + " for URL: " + url);
             }
         }
@@ -105,17 +107,17 @@ public class FileDownloader {
             // Set up the connection
             try {
                 int responseCode;
-                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("HEAD"); // Use GET to download the file
-                connection.setInstanceFollowRedirects(false); // Handle redirects manually
-                connection.setConnectTimeout(5000); // 5 seconds timeout
-                connection.setReadTimeout(5000);
-
-                // Get response code
-                responseCode = connection.getResponseCode();
+                String location;
+                long contentLength;
+                // Use HEAD to query the size, redirects are handled manually
+                try (HttpTransport.Response connection = DownloadHelper.getTransport().request(url, "HEAD", Map.of(), false)) {
+                    responseCode = connection.getStatusCode();
+                    location = connection.getHeader("Location");
+                    contentLength = connection.getContentLength();
+                }
 
                 if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL) {
-                    return connection.getContentLengthLong();
+                    return contentLength;
                 } else if (isRedirect(responseCode)) {
                     redirectCount++;
                     if (redirectCount > maxRedirects) {
@@ -123,14 +125,12 @@ public class FileDownloader {
                     }
 
                     // Get the redirect location
-                    String location = connection.getHeaderField("Location");
                     if (location == null || location.isEmpty()) {
                         throw new RuntimeException("Redirect response code " + responseCode + " but no Location header found for URL: " + url);
                     }
 
                     // Resolve the new URL
                     url = new URL(url, location);
-                    connection.disconnect();
                     continue; // Follow the redirect
                 } else {
                     throw new RuntimeException("Failed to download file, HTTP response code: " + responseCode + " for URL: " + url);
@@ -151,9 +151,9 @@ public class FileDownloader {
     }
 
     // Helper method to extract the filename from the URL or Content-Disposition header
-    private static String extractFileName(String url, HttpURLConnection connection) {
+    private static String extractFileName(String url, HttpTransport.Response connection) {
         // Try to get filename from Content-Disposition header
-        String contentDisposition = connection.getHeaderField("Content-Disposition");
+        String contentDisposition = connection.getHeader("Content-Disposition");
         if (contentDisposition != null) {
             String[] parts = contentDisposition.split("filename=");
             if (parts.length > 1) {
@@ -15,11 +15,14 @@
 package org.example.downloader.java;
 
 import org.example.downloader.util.BasePackage;
+import org.example.downloader.util.MultiDigestVerifier;
 
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * architecture: ppc64
@@ -57,7 +60,10 @@ public class JavaPackage implements BasePackage {
     private final JavaImplementation implementation;
     private final JavaPlatform platform;
 
+    private final String md5Digest;
+    private final String sha1Digest;
     private final String sha256Digest;
+    private final String sha512Digest;
     private final String size;
     private final String url;
 
@@ -73,7 +79,10 @@ public class JavaPackage implements BasePackage {
             String javaVersion,
             String implementation,
             String platform,
+            String md5Digest,
+            String sha1Digest,
             String sha256Digest,
+            String sha512Digest,
             String size,
             String url,
             String vendor,
@@ -87,7 +96,10 @@ public class JavaPackage implements BasePackage {
         this.version = JavaVersion.fromString(javaVersion);
         this.implementation = JavaImplementation.fromString(implementation);
         this.platform = JavaPlatform.fromString(platform);
+        this.md5Digest = md5Digest;
+        this.sha1Digest = sha1Digest;
         this.sha256Digest = sha256Digest;
+        this.sha512Digest = sha512Digest;
         this.size = size;
         this.url = url;
         this.vendor = JavaVendor.fromString(vendor);
@@ -149,6 +161,26 @@ public class JavaPackage implements BasePackage {
         return sha256Digest;
     }
 
+    /**
+     * The metadata also lists MD5, SHA-1 and SHA-512 digests for most packages, those that are
+     * listed are verified together with the SHA-256 digest.
+     */
+    @Override
+    public Map<String, String> getDigests() {
+        Map<String, String> digests = new LinkedHashMap<>();
+        digests.put(MultiDigestVerifier.SHA256, sha256Digest);
+        if (!md5Digest.isBlank()) {
+            digests.put(MultiDigestVerifier.MD5, md5Digest);
+        }
+        if (!sha1Digest.isBlank()) {
+            digests.put(MultiDigestVerifier.SHA1, sha1Digest);
+        }
+        if (!sha512Digest.isBlank()) {
+            digests.put(MultiDigestVerifier.SHA512, sha512Digest);
+        }
+        return digests;
+    }
+
     public URL getRealUrl() throws MalformedURLException, URISyntaxException {
         return new URI(url).toURL();
     }
@@ -83,7 +83,10 @@ public class JavaParser extends AbstractFileParser<JavaPackage> {
          *             String java_version,
          *             String jvm_impl,
          *             String os,
+         *             String md5,
+         *             String sha1,
          *             String sha256,
+         *             String sha512,
          *             String size,
          *             String url,
          *             String vendor,
@@ -98,7 +101,10 @@ public class JavaParser extends AbstractFileParser<JavaPackage> {
                 packageData.getOrDefault("java_version", new StringBuilder()).toString(),
                 packageData.getOrDefault("jvm_impl", new StringBuilder()).toString(),
                 packageData.getOrDefault("os", new StringBuilder()).toString(),
+                packageData.getOrDefault("md5", new StringBuilder()).toString(),
+                packageData.getOrDefault("sha1", new StringBuilder()).toString(),
                 packageData.getOrDefault("sha256", new StringBuilder()).toString(),
+                packageData.getOrDefault("sha512", new StringBuilder()).toString(),
                 packageData.getOrDefault("size", new StringBuilder()).toString(),
                 packageData.getOrDefault("url", new StringBuilder()).toString(),
                 packageData.getOrDefault("vendor", new StringBuilder("0")).toString(),
@@ -22,11 +22,8 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class JavaWorkerIterator extends WorkerIterator<JavaPackage> {
 
@@ -35,8 +32,6 @@ public class JavaWorkerIterator extends WorkerIterator<JavaPackage> {
     private final WorkLogger logger;
     private final BlockChainHelper.Blockchain chain;
 
-    private final AtomicReference<List<DownloadHelper.Download>> incompleteDownloads = new AtomicReference<>(new ArrayList<>());
-
 
     public JavaWorkerIterator(JavaDownloadEnvironment jde, WorkLogger logger) {
         this.jde = jde;
@@ -48,11 +43,12 @@ public class JavaWorkerIterator extends WorkerIterator<JavaPackage> {
     public JavaWorkerIterator(
             JavaDownloadEnvironment jde,
             HashMap<String, JavaPackage> packages,
+            SchedulingPolicy policy,
             BlockChainHelper.Blockchain chain,
             WorkLogger logger
     ) {
         this.jde = jde;
-        this.packageIterator = packages.values().iterator();
+        this.packageIterator = policy.order(packages.values()).iterator();
         this.chain = chain;
         this.logger = logger;
     }
@@ -73,10 +69,6 @@ public class JavaWorkerIterator extends WorkerIterator<JavaPackage> {
         return packageIterator.hasNext();
     }
 
-    public List<DownloadHelper.Download> getIncompleteDownloads() {
-        return incompleteDownloads.get();
-    }
-
     public class JavaWorker extends Worker<JavaPackage> {
 
         private final BlockChainHelper.Blockchain chain;
@@ -107,20 +99,23 @@ public class JavaWorkerIterator extends WorkerIterator<JavaPackage> {
 
         @Override
         protected void doWhenTimedOut() throws IOException {
-            incompleteDownloads.get().add(downloadTask);
             System.out.println("Download timed out for " + basePackage.uniqueKey());
         }
 
         @Override
         protected void doWhenError() throws IOException {
-            incompleteDownloads.get().add(downloadTask);
             System.out.println("Download errored for " + basePackage.uniqueKey());
         }
 
         @Override
         protected void doWhenUnexpected() throws IOException {
-            incompleteDownloads.get().add(downloadTask);
+            recordIncompleteIfStopped();
             System.out.println("Something unexpected for " + basePackage.uniqueKey());
         }
+
+        @Override
+        protected JavaWorker createRetryWorker() {
+            return new JavaWorker(basePackage, new DownloadHelper.Download(downloadTask.getUrl(), downloadTask.getFilePath()), chain, workLogger);
+        }
     }
 }
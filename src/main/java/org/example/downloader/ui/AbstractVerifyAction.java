@@ -18,9 +18,11 @@ import org.example.downloader.GeneralEnvironment;
 import org.example.downloader.WorkLogger;
 import org.example.downloader.util.*;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -37,6 +39,7 @@ public abstract class AbstractVerifyAction<E extends EnvironmentManager, P exten
     WorkLogger logger;
 
     protected BlockChainHelper.Blockchain chain;
+    protected WorkJournal journal;
 
     public AbstractVerifyAction(InversionOfControl ioc, String name) {
         super(ioc, name);
@@ -108,6 +111,54 @@ public abstract class AbstractVerifyAction<E extends EnvironmentManager, P exten
         return true;
     }
 
+    /**
+     * Resumes from the work journal of the blockchain, the artifacts journaled as verified are
+     * taken off the list without hashing them again. The links of the blockchain are checked
+     * first, and a job is only taken as registered or verified if the blockchain holds its row,
+     * a job whose row was lost is done again.
+     *
+     * @return true if the run was resumed from the journal, false if there is no journal to resume from
+     * or the blockchain has to be verified in full.
+     */
+    protected boolean resumeFromJournal() {
+        journal = WorkJournal.open(WorkJournal.journalFileOf(chain.getBlockchainFile()));
+        if (journal.isEmpty()) {
+            return false;
+        }
+        Set<String> registered;
+        try {
+            registered = chain.verifyLinks();
+        } catch (IllegalStateException e) {
+            System.out.println("The blockchain file does not link up (" + e.getMessage() + "), verifying it in full.");
+            return false;
+        }
+        int resumed = 0;
+        for (WorkJournal.State state : WorkJournal.State.values()) {
+            boolean journaledRegistered = state == WorkJournal.State.REGISTERED || state == WorkJournal.State.VERIFIED;
+            for (String key : journal.getKeys(state)) {
+                if (journaledRegistered != registered.contains(key)) {
+                    // The blockchain decides, a row may be written without the journal knowing and the other way around
+                    journal.record(key, journaledRegistered ? WorkJournal.State.PENDING : WorkJournal.State.REGISTERED, 0);
+                } else if (state == WorkJournal.State.VERIFIED) {
+                    P p = allPackages.remove(key);
+                    if (p != null) {
+                        downloadedSize.addAndGet(p.getByteSize());
+                    }
+                    resumed++;
+                }
+            }
+        }
+        System.out.println("Resumed from journal, " + resumed + " artifacts already verified.");
+        return true;
+    }
+
+    /**
+     * Starts an empty work journal for a new blockchain.
+     */
+    protected void startJournal() {
+        journal = WorkJournal.create(WorkJournal.journalFileOf(chain.getBlockchainFile()));
+    }
+
     protected abstract String generateArtifactPath(BlockChainHelper.Row r);
 
     protected BlockchainVerifier createBlockchainVerifier() {
@@ -120,7 +171,12 @@ public abstract class AbstractVerifyAction<E extends EnvironmentManager, P exten
             WorkLogger logger,
             long totalSize
     ) {
-        progressWorker(executorHolder, verifier, logger, (eh) -> {
+        VerificationCache verificationCache = new VerificationCache(ge.getVerificationCacheDir());
+        verifier.setVerificationCache(verificationCache, ge.getVerificationMode(), ge.getDeepScanDays());
+        verifier.setOrder(ge.getVerificationOrder());
+        verifier.setManifestDir(ge.getPieceManifestDir());
+
+        progressWorker(executorHolder, verifier, logger, getConcurrencyLimit("verify", ConcurrencyLimit.forStorage(em.getDownloadDir())), (eh) -> {
             String color;
             if(verifier.isBroken()) {
                 color = ProgressBar.ANSI_RED;
@@ -134,9 +190,19 @@ public abstract class AbstractVerifyAction<E extends EnvironmentManager, P exten
                     totalSize,
                     50,
                     color,
-                    "Verifying blockchain " + PrintHelper.formatSpeed(eh.executor.getSpeed())
+                    "Verifying blockchain " + PrintHelper.formatSpeed(eh.executor.getMetrics().getRecentRate())
             );
         });
+
+        saveVerificationCache(verificationCache);
+    }
+
+    protected void saveVerificationCache(VerificationCache verificationCache) {
+        try {
+            verificationCache.save();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     protected void postVerificationAnalyze(
@@ -146,8 +212,12 @@ public abstract class AbstractVerifyAction<E extends EnvironmentManager, P exten
         System.out.println(
                 "Verified " + PrintHelper.formatByteSize(executorHolder.executor.getCurrentTotalBytes()) + " of information in " +
                         PrintHelper.formatTime(executorHolder.executor.getTime()) + " at a speed of " +
-                        PrintHelper.formatSpeed(executorHolder.executor.getActiveWorkerCount())
+                        PrintHelper.formatSpeed(executorHolder.executor.getSpeed())
         );
+        if (verifier.getTrustedCount() > 0) {
+            System.out.println(verifier.getTrustedCount() + " artifacts were trusted as unchanged without hashing them ("
+                    + ge.getVerificationMode().getName() + " verification).");
+        }
 
         if(verifier.isBroken()) {
             System.out.println("The blockchain file is broken, it is recommended to delete the file and try again.");
@@ -167,7 +237,14 @@ public abstract class AbstractVerifyAction<E extends EnvironmentManager, P exten
 
         verifier.getVerifiedArtifacts().forEach((r) -> {
             P jp = allPackages.remove(r.getDigest());
+            // A blockchain may hold the row of an artifact twice
+            if (jp == null) {
+                return;
+            }
             downloadedSize.addAndGet(jp.getByteSize());
+            if (journal != null) {
+                journal.record(r.getDigest(), WorkJournal.State.VERIFIED, jp.getByteSize());
+            }
         });
     }
 }
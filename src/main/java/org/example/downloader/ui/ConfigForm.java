@@ -15,7 +15,15 @@
 package org.example.downloader.ui;
 
 import org.example.downloader.GeneralEnvironment;
+import org.example.downloader.util.BandwidthSchedule;
+import org.example.downloader.util.DownloadHelper;
+import org.example.downloader.util.ExecutionMode;
+import org.example.downloader.util.HttpCache;
+import org.example.downloader.util.HttpTransport;
 import org.example.downloader.util.InversionOfControl;
+import org.example.downloader.util.SchedulingPolicy;
+import org.example.downloader.util.VerificationMode;
+import org.example.downloader.util.VerificationOrder;
 import org.example.downloader.util.Form;
 
 import java.io.IOException;
@@ -41,6 +49,93 @@ public class ConfigForm extends Form {
                 this::validatePath,
                 System.out::println
         ));
+
+        registerQuestion(() -> askMultipleChoiceQuestion(
+                "Enter HTTP transport",
+                HttpTransport.Engine.toStringList(),
+                ge.getHttpTransport().getName(),
+                System.out::println
+        ));
+
+        registerQuestion(() -> askQuestion(
+                "Enter bandwidth limit per second, optionally per time of day (e.g. 08:00-17:00=512K, 4M), 0 for unlimited",
+                ge.getBandwidthSchedule().toString(),
+                BandwidthSchedule::isValid,
+                System.out::println
+        ));
+
+        registerQuestion(() -> askQuestion(
+                "Enter how many times a failed download is retried during a run",
+                String.valueOf(ge.getRetryLimit()),
+                answer -> answer.matches("\\d{1,3}"),
+                System.out::println
+        ));
+
+        registerQuestion(() -> askQuestion(
+                "Enter the low speed limit per second below which a download counts as stalled, 0 to never abort",
+                BandwidthSchedule.formatRate(ge.getLowSpeedLimit()),
+                this::validateRate,
+                System.out::println
+        ));
+
+        registerQuestion(() -> askQuestion(
+                "Enter for how many seconds a download may stay below the low speed limit (1-300)",
+                String.valueOf(ge.getLowSpeedTime()),
+                answer -> answer.matches("\\d{1,3}") && Integer.parseInt(answer) >= 1 && Integer.parseInt(answer) <= 300,
+                System.out::println
+        ));
+
+        registerQuestion(() -> askQuestion(
+                "Enter how many connections may be open to the same host at once, 0 for no limit",
+                String.valueOf(ge.getHostConnectionLimit()),
+                answer -> answer.matches("\\d{1,3}"),
+                System.out::println
+        ));
+
+        registerQuestion(() -> askMultipleChoiceQuestion(
+                "Enter the order packages are downloaded in",
+                SchedulingPolicy.toStringList(),
+                ge.getSchedulingPolicy().getName(),
+                System.out::println
+        ));
+
+        registerQuestion(() -> askMultipleChoiceQuestion(
+                "Enter worker execution mode, virtual threads need Java 21"
+                        + (ExecutionMode.VIRTUAL.isAvailable() ? "" : " (not available on this Java)"),
+                ExecutionMode.toAvailableStringList(),
+                ge.getExecutionMode().isAvailable() ? ge.getExecutionMode().getName() : ExecutionMode.PLATFORM.getName(),
+                System.out::println
+        ));
+
+        registerQuestion(() -> askMultipleChoiceQuestion(
+                "Enter verification mode, fast hashes changed files, standard also a rolling slice, deep hashes everything",
+                VerificationMode.toStringList(),
+                ge.getVerificationMode().getName(),
+                System.out::println
+        ));
+
+        registerQuestion(() -> askQuestion(
+                "Enter in how many days the rolling deep scan hashes every artifact again, 0 to never",
+                String.valueOf(ge.getDeepScanDays()),
+                answer -> answer.matches("\\d{1,4}"),
+                System.out::println
+        ));
+
+        registerQuestion(() -> askMultipleChoiceQuestion(
+                "Enter the order artifacts are verified in, locality reads them in disk order and one at a time from a rotational disk",
+                VerificationOrder.toStringList(),
+                ge.getVerificationOrder().getName(),
+                System.out::println
+        ));
+    }
+
+    private boolean validateRate(String answer) {
+        try {
+            BandwidthSchedule.parseRate(answer);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
     }
 
     @Override
@@ -49,10 +144,25 @@ public class ConfigForm extends Form {
         List<Answer> answers = getAnswers();
 
         ge.set(GeneralEnvironment.DIR_CACHE, answers.get(0).getResponse());
+        ge.setHttpTransport(HttpTransport.Engine.fromString(answers.get(1).getResponse()));
+        DownloadHelper.setTransport(ge.getHttpTransport().create());
+        ge.setBandwidthSchedule(BandwidthSchedule.parse(answers.get(2).getResponse()));
+        DownloadHelper.getBandwidthLimiter().setSchedule(ge.getBandwidthSchedule());
+        ge.setRetryLimit(Integer.parseInt(answers.get(3).getResponse()));
+        ge.setLowSpeedLimit(BandwidthSchedule.parseRate(answers.get(4).getResponse()));
+        ge.setLowSpeedTime(Integer.parseInt(answers.get(5).getResponse()));
+        DownloadHelper.getStallWatchdog().setLimit(ge.getLowSpeedLimit(), ge.getLowSpeedTime());
+        ge.setHostConnectionLimit(Integer.parseInt(answers.get(6).getResponse()));
+        ge.setSchedulingPolicy(SchedulingPolicy.fromString(answers.get(7).getResponse()));
+        ge.setExecutionMode(ExecutionMode.fromString(answers.get(8).getResponse()));
+        ge.setVerificationMode(VerificationMode.fromString(answers.get(9).getResponse()));
+        ge.setDeepScanDays(Integer.parseInt(answers.get(10).getResponse()));
+        ge.setVerificationOrder(VerificationOrder.fromString(answers.get(11).getResponse()));
 
         try {
             ge.save();
             ge.reload();
+            DownloadHelper.setHttpCache(new HttpCache(ge.getHttpCacheDir()));
             System.out.println("Saved and reloaded new configuration.");
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -36,11 +36,13 @@ public class DebianDownloadAction extends DebianVerifyAction {
                 return;
             }
 
-            BlockchainVerifier verifier = createBlockchainVerifier();
+            if(!resumeFromJournal()) {
+                BlockchainVerifier verifier = createBlockchainVerifier();
 
-            verifierThread(executorHolder, verifier, logger, totalSize.get());
+                verifierThread(executorHolder, verifier, logger, totalSize.get());
 
-            postVerificationAnalyze(executorHolder, verifier);
+                postVerificationAnalyze(executorHolder, verifier);
+            }
 
             chain.resume();
         } catch (IllegalStateException e) {
@@ -49,6 +51,7 @@ public class DebianDownloadAction extends DebianVerifyAction {
                     generateBlockchainFilename()
             );
             chain.start();
+            startJournal();
             System.out.println("Created new blockchain: " + chain.getBlockchainFile());
         }
 
@@ -57,7 +60,13 @@ public class DebianDownloadAction extends DebianVerifyAction {
 
         DebianWorkerIterator debianDownloader = new DebianWorkerIterator(ge, em, allPackages, chain, logger);
 
-        progressWorker(executorHolder, debianDownloader, logger, (eh) -> {
+        journal.recordPending(allPackages.keySet());
+        debianDownloader.setJournal(journal);
+        debianDownloader.setManifestDir(ge.getPieceManifestDir());
+        VerificationCache verificationCache = new VerificationCache(ge.getVerificationCacheDir());
+        debianDownloader.setVerificationCache(verificationCache);
+
+        progressWorker(executorHolder, debianDownloader, logger, getConcurrencyLimit("debian_download", ConcurrencyLimit.DEFAULT), (eh) -> {
             ProgressBar.printProgressMsg(
                     eh.executor.getCurrentTotalBytes(),
                     totalSize.get() - downloadedSize.get(),
@@ -66,6 +75,7 @@ public class DebianDownloadAction extends DebianVerifyAction {
                     "Downloading " + PrintHelper.formatByteSize(eh.executor.getCurrentTotalBytes())
             );
         });
+        saveVerificationCache(verificationCache);
 
 
         if(debianDownloader.getIncompleteDownloads().isEmpty()) {
@@ -76,6 +86,7 @@ public class DebianDownloadAction extends DebianVerifyAction {
         }
 
         chain.close();
+        journal.close();
     }
 
     @Override
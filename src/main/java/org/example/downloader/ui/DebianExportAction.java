@@ -17,8 +17,10 @@ package org.example.downloader.ui;
 import org.example.downloader.deb.DebianWorkerIteratorWithCopy;
 import org.example.downloader.util.BlockChainHelper;
 import org.example.downloader.util.BlockchainVerifier;
+import org.example.downloader.util.ConcurrencyLimit;
 import org.example.downloader.util.InversionOfControl;
 import org.example.downloader.util.PrintHelper;
+import org.example.downloader.util.VerificationCache;
 
 import java.util.Optional;
 
@@ -40,11 +42,13 @@ public class DebianExportAction extends DebianVerifyAction {
                 return;
             }
 
-            BlockchainVerifier verifier = createBlockchainVerifier();
+            if(!resumeFromJournal()) {
+                BlockchainVerifier verifier = createBlockchainVerifier();
 
-            verifierThread(executorHolder, verifier, logger, totalSize.get());
+                verifierThread(executorHolder, verifier, logger, totalSize.get());
 
-            postVerificationAnalyze(executorHolder, verifier);
+                postVerificationAnalyze(executorHolder, verifier);
+            }
 
             chain.resume();
         } catch (IllegalStateException e) {
@@ -53,6 +57,7 @@ public class DebianExportAction extends DebianVerifyAction {
                     generateBlockchainFilename()
             );
             chain.start();
+            startJournal();
             System.out.println("Created new blockchain: " + chain.getBlockchainFile());
         }
 
@@ -61,7 +66,13 @@ public class DebianExportAction extends DebianVerifyAction {
 
         DebianWorkerIteratorWithCopy debianDownloader = new DebianWorkerIteratorWithCopy(ge, em, allPackages, chain, logger);
 
-        progressWorker(executorHolder, debianDownloader, logger, (eh) -> {
+        journal.recordPending(allPackages.keySet());
+        debianDownloader.setJournal(journal);
+        debianDownloader.setManifestDir(ge.getPieceManifestDir());
+        VerificationCache verificationCache = new VerificationCache(ge.getVerificationCacheDir());
+        debianDownloader.setVerificationCache(verificationCache);
+
+        progressWorker(executorHolder, debianDownloader, logger, getConcurrencyLimit("debian_export", ConcurrencyLimit.DEFAULT), (eh) -> {
             ProgressBar.printProgressMsg(
                     eh.executor.getCurrentTotalBytes(),
                     totalSize.get() - downloadedSize.get(),
@@ -70,6 +81,7 @@ public class DebianExportAction extends DebianVerifyAction {
                     "Downloading " + PrintHelper.formatByteSize(eh.executor.getCurrentTotalBytes())
             );
         });
+        saveVerificationCache(verificationCache);
 
         if(debianDownloader.getIncompleteDownloads().isEmpty()) {
             System.out.println("No incomplete downloads, finalizing blockchain!");
@@ -79,6 +91,7 @@ public class DebianExportAction extends DebianVerifyAction {
         }
 
         chain.close();
+        journal.close();
     }
 
     @Override
@@ -20,6 +20,7 @@ import org.example.downloader.deb.DebianDownloadEnvironment;
 import org.example.downloader.deb.DebianMetadataDownloader;
 import org.example.downloader.deb.DebianMirrorCache;
 import org.example.downloader.util.Action;
+import org.example.downloader.util.ConcurrencyLimit;
 import org.example.downloader.util.InversionOfControl;
 import org.example.downloader.util.PrintHelper;
 
@@ -100,7 +101,7 @@ public class DebianMetadataAction extends Action {
         System.out.println("Will download the package lists");
         DebianMetadataDownloader metadataDownloader = new DebianMetadataDownloader(ge, dde, logger);
 
-        progressWorker(executorHolder, metadataDownloader, logger, (eh) -> {
+        progressWorker(executorHolder, metadataDownloader, logger, getConcurrencyLimit("debian_metadata", ConcurrencyLimit.DEFAULT), (eh) -> {
             ProgressBar.printProgressMsg(
                     eh.executor.getCurrentTotalBytes(),
                     metadataDownloader.getTotalBytes(),
@@ -38,11 +38,13 @@ public class JavaDownloadAction extends JavaVerifyAction {
                 return;
             }
 
-            BlockchainVerifier verifier = createBlockchainVerifier();
+            if(!resumeFromJournal()) {
+                BlockchainVerifier verifier = createBlockchainVerifier();
 
-            verifierThread(executorHolder, verifier, logger, totalSize.get());
+                verifierThread(executorHolder, verifier, logger, totalSize.get());
 
-            postVerificationAnalyze(executorHolder, verifier);
+                postVerificationAnalyze(executorHolder, verifier);
+            }
 
             chain.resume();
         } catch (IllegalStateException e) {
@@ -51,15 +53,22 @@ public class JavaDownloadAction extends JavaVerifyAction {
                     String.format(FILENAME, em.hashOfConfiguration())
             );
             chain.start();
+            startJournal();
             System.out.println("Created new blockchain: " + chain.getBlockchainFile());
         }
 
         System.out.println("Totally " + allPackages.size() + " artifacts yet to download for completion.");
         System.out.println("Approximately up to " + PrintHelper.formatByteSize(totalSize.get() - downloadedSize.get()) + " of data to download.");
 
-        JavaWorkerIterator javaDownloader = new JavaWorkerIterator(em, allPackages, chain, logger);
+        JavaWorkerIterator javaDownloader = new JavaWorkerIterator(em, allPackages, ge.getSchedulingPolicy(), chain, logger);
+
+        journal.recordPending(allPackages.keySet());
+        javaDownloader.setJournal(journal);
+        javaDownloader.setManifestDir(ge.getPieceManifestDir());
+        VerificationCache verificationCache = new VerificationCache(ge.getVerificationCacheDir());
+        javaDownloader.setVerificationCache(verificationCache);
 
-        progressWorker(executorHolder, javaDownloader, logger, (eh) -> {
+        progressWorker(executorHolder, javaDownloader, logger, getConcurrencyLimit("java_download", ConcurrencyLimit.DEFAULT), (eh) -> {
             ProgressBar.printProgressMsg(
                     eh.executor.getCurrentTotalBytes(),
                     totalSize.get() - downloadedSize.get(),
@@ -68,6 +77,7 @@ public class JavaDownloadAction extends JavaVerifyAction {
                     "Downloading " + PrintHelper.formatByteSize(eh.executor.getCurrentTotalBytes())
             );
         });
+        saveVerificationCache(verificationCache);
 
         if(javaDownloader.getIncompleteDownloads().isEmpty()) {
             System.out.println("No incomplete downloads, finalizing blockchain!");
@@ -77,6 +87,7 @@ public class JavaDownloadAction extends JavaVerifyAction {
         }
 
         chain.close();
+        journal.close();
     }
 
     @Override
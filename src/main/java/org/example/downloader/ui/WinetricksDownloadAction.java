@@ -16,8 +16,10 @@ package org.example.downloader.ui;
 
 import org.example.downloader.util.BlockChainHelper;
 import org.example.downloader.util.BlockchainVerifier;
+import org.example.downloader.util.ConcurrencyLimit;
 import org.example.downloader.util.InversionOfControl;
 import org.example.downloader.util.PrintHelper;
+import org.example.downloader.util.VerificationCache;
 import org.example.downloader.wtx.WinetricksWorkerIterator;
 
 import java.util.Optional;
@@ -41,11 +43,13 @@ public class WinetricksDownloadAction extends WinetricksVerifyAction {
                 return;
             }
 
-            BlockchainVerifier verifier = createBlockchainVerifier();
+            if(!resumeFromJournal()) {
+                BlockchainVerifier verifier = createBlockchainVerifier();
 
-            verifierThread(executorHolder, verifier, logger, totalSize.get());
+                verifierThread(executorHolder, verifier, logger, totalSize.get());
 
-            postVerificationAnalyze(executorHolder, verifier);
+                postVerificationAnalyze(executorHolder, verifier);
+            }
 
             chain.resume();
         } catch (IllegalStateException e) {
@@ -54,15 +58,22 @@ public class WinetricksDownloadAction extends WinetricksVerifyAction {
                     String.format(FILENAME, em.hashOfConfiguration())
             );
             chain.start();
+            startJournal();
             System.out.println("Created new blockchain: " + chain.getBlockchainFile());
         }
 
         System.out.println("Totally " + allPackages.size() + " artifacts yet to download for completion.");
         System.out.println("Approximately up to " + PrintHelper.formatByteSize(totalSize.get() - downloadedSize.get()) + " of data to download.");
 
-        WinetricksWorkerIterator winetricksDownloader = new WinetricksWorkerIterator(em, allPackages, chain, logger);
+        WinetricksWorkerIterator winetricksDownloader = new WinetricksWorkerIterator(em, allPackages, ge.getSchedulingPolicy(), chain, logger);
+
+        journal.recordPending(allPackages.keySet());
+        winetricksDownloader.setJournal(journal);
+        winetricksDownloader.setManifestDir(ge.getPieceManifestDir());
+        VerificationCache verificationCache = new VerificationCache(ge.getVerificationCacheDir());
+        winetricksDownloader.setVerificationCache(verificationCache);
 
-        progressWorker(executorHolder, winetricksDownloader, logger, (eh) -> {
+        progressWorker(executorHolder, winetricksDownloader, logger, getConcurrencyLimit("winetricks_download", ConcurrencyLimit.DEFAULT), (eh) -> {
             ProgressBar.printProgressMsg(
                     eh.executor.getCurrentTotalBytes(),
                     totalSize.get() - downloadedSize.get(),
@@ -71,6 +82,7 @@ public class WinetricksDownloadAction extends WinetricksVerifyAction {
                     "Downloading " + PrintHelper.formatByteSize(eh.executor.getCurrentTotalBytes())
             );
         });
+        saveVerificationCache(verificationCache);
 
         if(winetricksDownloader.getIncompleteDownloads().isEmpty()) {
             System.out.println("No incomplete downloads, finalizing blockchain!");
@@ -80,6 +92,7 @@ public class WinetricksDownloadAction extends WinetricksVerifyAction {
         }
 
         chain.close();
+        journal.close();
     }
 
     @Override
@@ -16,7 +16,9 @@ package org.example.downloader.util;
 
 import org.example.downloader.WorkLogger;
 
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 public abstract class AbstractWorker implements Runnable {
@@ -43,8 +45,126 @@ public abstract class AbstractWorker implements Runnable {
 
     public abstract float getSpeed();
     public abstract float getTime();
-    public abstract long getCurrentProcessSize();
+
+    private final LongAdder processedBytes = new LongAdder();
+    private volatile TransferMetrics metrics = null;
+
+    /**
+     * Reports bytes processed by this worker, they count towards the progress of the executor
+     * running it. Workers report as they go, a negative count takes back bytes that are redone.
+     *
+     * @param bytes The number of bytes.
+     */
+    protected final void reportProgress(long bytes) {
+        processedBytes.add(bytes);
+        TransferMetrics current = metrics;
+        if (current != null) {
+            current.add(bytes);
+        }
+    }
+
+    /**
+     * Gets the bytes this worker has reported.
+     *
+     * @return The number of bytes.
+     */
+    public long getCurrentProcessSize() { return processedBytes.sum(); }
+
+    final void attachMetrics(TransferMetrics metrics) {
+        this.metrics = metrics;
+        metrics.add(processedBytes.sum());
+    }
+
+    final void detachMetrics() {
+        TransferMetrics current = metrics;
+        metrics = null;
+        if (current != null) {
+            current.add(-processedBytes.sum());
+        }
+    }
 
     public boolean isRunning() { return isRunning.get() && !isCompleted(); }
     public abstract boolean isCompleted();
+
+    private int attempt = 0;
+
+    /**
+     * Gets how many times the work of this worker has been retried before.
+     *
+     * @return 0 for the first attempt, 1 for the first retry and so on.
+     */
+    public int getAttempt() { return attempt; }
+
+    // The lane the executor queued the worker in, the priority is asked for only once
+    WorkPriority lane = null;
+
+    /**
+     * Gets the lane the worker waits in for a free slot.
+     *
+     * @return The priority, normal unless a worker knows better.
+     */
+    public WorkPriority getPriority() { return WorkPriority.NORMAL; }
+
+    /**
+     * Gets the host the worker connects to, the executor limits the connections per host.
+     *
+     * @return The host name, or null if the worker makes no connections.
+     */
+    public String getHost() { return null; }
+
+    /**
+     * Tells whether the last run failed in a way that is worth retrying, a manual stop is not a failure.
+     *
+     * @return true if the work should be retried, false otherwise.
+     */
+    public boolean hasFailed() { return false; }
+
+    /**
+     * Creates a worker that retries the failed work of this worker, possibly from another source.
+     *
+     * @return The retrying worker, or null if the work can not be retried.
+     */
+    protected AbstractWorker createRetryWorker() { return null; }
+
+    final AbstractWorker retry() {
+        AbstractWorker retry = createRetryWorker();
+        if (retry != null) {
+            retry.attempt = attempt + 1;
+            prepareRetry(retry);
+        }
+        return retry;
+    }
+
+    /**
+     * Hands state the retrying worker needs on to it, called once the retry is created.
+     *
+     * @param retry The worker retrying the work of this worker.
+     */
+    protected void prepareRetry(AbstractWorker retry) {}
+
+    /**
+     * Gets the work left for a stage of the pipeline once run has returned, such as hashing
+     * the downloaded file or writing it to the ledger. The stages run in order, each on its
+     * own threads, and the worker only counts as completed when the last of them is done.
+     *
+     * @param stage The stage.
+     * @return The work for the stage, or null if there is none.
+     */
+    protected Runnable getStageWork(WorkPipeline.Stage stage) { return null; }
+
+    /**
+     * Called when the work for a stage of the pipeline throws. A worker that is to be retried
+     * must count as failed afterwards, the default does nothing.
+     *
+     * @param stage The stage.
+     * @param e     The exception the work threw.
+     */
+    protected void doWhenStageFailed(WorkPipeline.Stage stage, RuntimeException e) {}
+
+    /**
+     * Called when failed work is given up, because the retry budget is spent or the run was shut down.
+     *
+     * @throws IOException if handling the failure fails.
+     */
+    protected void doWhenAbandoned() throws IOException {}
 }
\ No newline at end of file
@@ -16,9 +16,37 @@ package org.example.downloader.util;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.function.Predicate;
 
 public abstract class AbstractWorkerIterator<E extends AbstractWorker> implements Iterator<E> {
 
+    private volatile Predicate<String> hostAvailability = host -> true;
+
+    /**
+     * Sets the check of whether a host can take another connection, so that an iterator
+     * choosing between sources can prefer the ones that are not saturated.
+     *
+     * @param hostAvailability Tells whether a host can take another connection.
+     */
+    public void setHostAvailability(Predicate<String> hostAvailability) {
+        this.hostAvailability = hostAvailability;
+    }
+
+    protected boolean isHostAvailable(String host) {
+        return hostAvailability.test(host);
+    }
+
+    /**
+     * Gets the connection limit of a host for work that shares something with a limit of its
+     * own, such as the disk verification reads from.
+     *
+     * @param host The host name.
+     * @return The limit, 0 for no limit, or -1 for the connection limit of the executor.
+     */
+    public int getHostLimit(String host) {
+        return -1;
+    }
+
     protected abstract E createWorker();
 
     @Override
@@ -14,8 +14,10 @@
  */
 package org.example.downloader.util;
 
+import org.example.downloader.GeneralEnvironment;
 import org.example.downloader.WorkLogger;
 
+import java.io.IOException;
 import java.util.Scanner;
 import java.util.function.Consumer;
 
@@ -26,6 +28,8 @@ import java.util.function.Consumer;
 public abstract class Action {
     protected final InversionOfControl ioc;
 
+    private static final long CONFIG_CHECK_INTERVAL = 1000;
+
     private final String name;
     private final Scanner scanner;
 
@@ -47,13 +51,41 @@ public abstract class Action {
             WorkLogger logger,
             Consumer<MyObject> updater
     ) {
-        executorHolder.executor = new WorkerExecutor(workerIterator, logger);
+        progressWorker(executorHolder, workerIterator, logger, ConcurrencyLimit.DEFAULT, updater);
+    }
+
+    /**
+     * Gets the configured concurrency limit of a workload.
+     *
+     * @param workload     The name of the workload, such as "debian_download".
+     * @param defaultLimit The limit used when none is configured.
+     * @return The concurrency limit.
+     */
+    protected ConcurrencyLimit getConcurrencyLimit(String workload, ConcurrencyLimit defaultLimit) {
+        return ioc.resolve(GeneralEnvironment.class).getConcurrencyLimit(workload, defaultLimit);
+    }
+
+    public <E extends AbstractWorker> void progressWorker(
+            MyObject executorHolder,
+            AbstractWorkerIterator<E> workerIterator,
+            WorkLogger logger,
+            ConcurrencyLimit concurrencyLimit,
+            Consumer<MyObject> updater
+    ) {
+        GeneralEnvironment ge = ioc.resolve(GeneralEnvironment.class);
+        executorHolder.executor = new WorkerExecutor(workerIterator, logger, ge.getRetryLimit(), concurrencyLimit, ge.getExecutionMode());
+        executorHolder.executor.setHostConnectionLimit(ge.getHostConnectionLimit());
         executorHolder.indicator = new Thread(() -> {
 
             executorHolder.executor.start();
+            long nextConfigCheck = 0;
             while (executorHolder.executor.isRunning()) {
                 try {
                     Thread.sleep(10);
+                    if (System.currentTimeMillis() >= nextConfigCheck) {
+                        refreshRuntimeSettings(executorHolder.executor, logger);
+                        nextConfigCheck = System.currentTimeMillis() + CONFIG_CHECK_INTERVAL;
+                    }
                     updater.accept(executorHolder);
                     /*ProgressBar.printProgressMsg(
                             executorHolder.executor.getCurrentTotalBytes(),
@@ -78,6 +110,23 @@ public abstract class Action {
         }
     }
 
+    /**
+     * Applies the bandwidth, low speed and host connection limits from the configuration file
+     * if it has been edited, which allows the limits to be changed while workers are running.
+     */
+    private void refreshRuntimeSettings(WorkerExecutor executor, WorkLogger logger) {
+        GeneralEnvironment ge = ioc.resolve(GeneralEnvironment.class);
+        try {
+            if (ge.reloadIfModified()) {
+                DownloadHelper.getBandwidthLimiter().setSchedule(ge.getBandwidthSchedule());
+                DownloadHelper.getStallWatchdog().setLimit(ge.getLowSpeedLimit(), ge.getLowSpeedTime());
+                executor.setHostConnectionLimit(ge.getHostConnectionLimit());
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.getLogger().warning("Unable to apply limits from configuration: " + e.getMessage());
+        }
+    }
+
     public static class MyObject {
         public WorkerExecutor executor;
         Thread indicator;
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+/**
+ * Adapts the number of concurrent workers to the measured throughput and error rate, with
+ * additive increase and multiplicative decrease. While the executor keeps all its workers
+ * busy the limit is raised by one per sample, and when the higher limit has not improved
+ * the throughput the step is taken back and held for a while before probing again. When
+ * too many workers fail within a sample, such as when a mirror starts refusing
+ * connections, the limit is halved. The limit always stays within the configured bounds.
+ */
+public class AdaptiveConcurrency {
+
+    public static final long SAMPLE_INTERVAL = 2000;
+
+    private static final double ERROR_THRESHOLD = 0.1;
+    private static final double GAIN_THRESHOLD = 0.05;
+    private static final int HOLD_SAMPLES = 5;
+
+    private final ConcurrencyLimit bounds;
+    private int limit;
+    private long lastBytes = 0;
+    private long lastTime;
+    private double lastThroughput = -1;
+    private boolean probing = false;
+    private int hold = 0;
+
+    public AdaptiveConcurrency(ConcurrencyLimit bounds) {
+        this.bounds = bounds;
+        this.limit = bounds.getMin();
+        this.lastTime = System.currentTimeMillis();
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Takes a sample and adjusts the limit.
+     *
+     * @param totalBytes The bytes processed so far, including work in progress.
+     * @param finished   The number of workers finished since the last sample.
+     * @param failed     The number of those workers that failed.
+     * @param active     The number of workers currently running.
+     * @return The new limit.
+     */
+    public synchronized int update(long totalBytes, int finished, int failed, int active) {
+        long now = System.currentTimeMillis();
+        long elapsed = Math.max(1, now - lastTime);
+        double throughput = (totalBytes - lastBytes) * 1000.0 / elapsed;
+        lastBytes = totalBytes;
+        lastTime = now;
+
+        if (finished > 0 && failed > finished * ERROR_THRESHOLD) {
+            limit = Math.max(bounds.getMin(), limit / 2);
+            probing = false;
+            hold = HOLD_SAMPLES;
+            lastThroughput = -1;
+            return limit;
+        }
+
+        if (probing && throughput < lastThroughput * (1 + GAIN_THRESHOLD)) {
+            limit = Math.max(bounds.getMin(), limit - 1);
+            probing = false;
+            hold = HOLD_SAMPLES;
+        } else if (hold > 0) {
+            hold--;
+            probing = false;
+        } else if (active >= limit && limit < bounds.getMax()) {
+            limit++;
+            probing = true;
+        } else {
+            probing = false;
+        }
+        lastThroughput = throughput;
+        return limit;
+    }
+}
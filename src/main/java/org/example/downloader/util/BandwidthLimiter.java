@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.InterruptedIOException;
+import java.time.LocalTime;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Token bucket shared by all downloads, limiting their combined rate. Every consumer
+ * reserves the bytes it has read and sleeps until the bucket has paid for them, so that
+ * concurrent downloads share the limit in the order they read. The bucket holds up to
+ * a quarter of a second worth of tokens to absorb bursts. The limit follows a
+ * {@link BandwidthSchedule} that is re-evaluated every second and can be replaced at
+ * any time, waiting consumers are released when the limit changes. The state is guarded
+ * by a lock rather than a monitor, and nobody sleeps holding it, so waiting consumers on
+ * virtual threads unmount from their carriers.
+ */
+public class BandwidthLimiter {
+
+    private static final long BURST_NANOS = 250_000_000L;
+    private static final long SCHEDULE_CHECK_NANOS = 1_000_000_000L;
+    private static final long MAX_SLEEP_MILLIS = 100;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private BandwidthSchedule schedule;
+    private long rate = BandwidthSchedule.UNLIMITED;
+    private long nextFree = 0;
+    private long lastScheduleCheck = 0;
+    // Read by sleeping consumers without the lock
+    private volatile long generation = 0;
+
+    public BandwidthLimiter(BandwidthSchedule schedule) {
+        setSchedule(schedule);
+    }
+
+    /**
+     * Replaces the schedule, the new limit takes effect immediately.
+     *
+     * @param schedule The schedule to follow.
+     */
+    public void setSchedule(BandwidthSchedule schedule) {
+        lock.lock();
+        try {
+            this.schedule = schedule;
+            updateRate(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public BandwidthSchedule getSchedule() {
+        lock.lock();
+        try {
+            return schedule;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the limit currently in effect.
+     *
+     * @return The rate in bytes per second, or BandwidthSchedule.UNLIMITED.
+     */
+    public long getRate() {
+        lock.lock();
+        try {
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateRate(long now) {
+        lastScheduleCheck = now;
+        long newRate = schedule.rateAt(LocalTime.now());
+        if (newRate != rate) {
+            rate = newRate;
+            nextFree = now;
+            generation++;
+        }
+    }
+
+    /**
+     * Pays for bytes read, sleeping as long as the limit requires.
+     *
+     * @param bytes       The number of bytes read.
+     * @param isCancelled Checked while sleeping, returns early when true.
+     * @throws InterruptedIOException if the thread is interrupted while sleeping.
+     */
+    public void acquire(long bytes, BooleanSupplier isCancelled) throws InterruptedIOException {
+        long due;
+        long reservedGeneration;
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            if (now - lastScheduleCheck >= SCHEDULE_CHECK_NANOS) {
+                updateRate(now);
+            }
+            if (rate == BandwidthSchedule.UNLIMITED) {
+                return;
+            }
+            nextFree = Math.max(nextFree, now - BURST_NANOS) + bytes * 1_000_000_000L / rate;
+            due = nextFree;
+            reservedGeneration = generation;
+        } finally {
+            lock.unlock();
+        }
+
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            if (generation != reservedGeneration) {
+                return;
+            }
+            if (isCancelled.getAsBoolean()) {
+                return;
+            }
+            try {
+                Thread.sleep(Math.min(MAX_SLEEP_MILLIS, remaining / 1_000_000L + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth");
+            }
+        }
+    }
+}
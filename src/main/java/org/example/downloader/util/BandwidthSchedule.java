@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A bandwidth limit that may vary over the day. Written as a comma separated list of
+ * entries, where a plain rate is the limit outside of any time window and
+ * "HH:MM-HH:MM=rate" is the limit within a window, for example "08:00-17:00=512K, 4M".
+ * Rates are in bytes per second with an optional K, M or G suffix, 0 means unlimited.
+ * A window may wrap past midnight, the first matching window wins.
+ */
+public class BandwidthSchedule {
+
+    public static final long UNLIMITED = 0;
+
+    public static final BandwidthSchedule NONE = new BandwidthSchedule(List.of(), UNLIMITED);
+
+    private final List<Window> windows;
+    private final long defaultRate;
+
+    private BandwidthSchedule(List<Window> windows, long defaultRate) {
+        this.windows = windows;
+        this.defaultRate = defaultRate;
+    }
+
+    private static class Window {
+        final LocalTime start;
+        final LocalTime end;
+        final long rate;
+
+        Window(LocalTime start, LocalTime end, long rate) {
+            this.start = start;
+            this.end = end;
+            this.rate = rate;
+        }
+
+        boolean contains(LocalTime time) {
+            if (start.isBefore(end)) {
+                return !time.isBefore(start) && time.isBefore(end);
+            }
+            return !time.isBefore(start) || time.isBefore(end);
+        }
+
+        @Override
+        public String toString() {
+            return start + "-" + end + "=" + formatRate(rate);
+        }
+    }
+
+    /**
+     * Returns the limit in effect at the given time of day.
+     *
+     * @param time The time of day.
+     * @return The rate in bytes per second, or UNLIMITED.
+     */
+    public long rateAt(LocalTime time) {
+        for (Window window : windows) {
+            if (window.contains(time)) {
+                return window.rate;
+            }
+        }
+        return defaultRate;
+    }
+
+    /**
+     * Parses a schedule, an empty or null value means unlimited.
+     *
+     * @param value The schedule as written in the configuration.
+     * @return The schedule.
+     * @throws IllegalArgumentException if the value is not a valid schedule.
+     */
+    public static BandwidthSchedule parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return NONE;
+        }
+        List<Window> windows = new ArrayList<>();
+        long defaultRate = UNLIMITED;
+        for (String entry : value.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            int equals = entry.indexOf('=');
+            if (equals < 0) {
+                defaultRate = parseRate(entry);
+                continue;
+            }
+            String[] times = entry.substring(0, equals).split("-");
+            if (times.length != 2) {
+                throw new IllegalArgumentException("Invalid time window: " + entry);
+            }
+            try {
+                windows.add(new Window(
+                        LocalTime.parse(times[0].trim()),
+                        LocalTime.parse(times[1].trim()),
+                        parseRate(entry.substring(equals + 1))
+                ));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid time window: " + entry, e);
+            }
+        }
+        return new BandwidthSchedule(List.copyOf(windows), defaultRate);
+    }
+
+    /**
+     * Checks whether a value can be parsed as a schedule.
+     *
+     * @param value The schedule as written in the configuration.
+     * @return true if the value is a valid schedule, false otherwise.
+     */
+    public static boolean isValid(String value) {
+        try {
+            parse(value);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a rate such as "512K" or "2M" into bytes per second.
+     *
+     * @param value The rate.
+     * @return The rate in bytes per second.
+     * @throws IllegalArgumentException if the value is not a valid rate.
+     */
+    public static long parseRate(String value) {
+        String rate = value.trim().toUpperCase(Locale.ROOT);
+        long multiplier = 1;
+        if (rate.endsWith("K")) {
+            multiplier = 1024L;
+        } else if (rate.endsWith("M")) {
+            multiplier = 1024L * 1024;
+        } else if (rate.endsWith("G")) {
+            multiplier = 1024L * 1024 * 1024;
+        }
+        if (multiplier > 1) {
+            rate = rate.substring(0, rate.length() - 1).trim();
+        }
+        try {
+            double number = Double.parseDouble(rate);
+            if (number < 0 || Double.isNaN(number) || Double.isInfinite(number)) {
+                throw new IllegalArgumentException("Invalid rate: " + value);
+            }
+            return (long) (number * multiplier);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid rate: " + value, e);
+        }
+    }
+
+    /**
+     * Formats a rate in bytes per second the way it is written in the configuration.
+     *
+     * @param rate The rate in bytes per second.
+     * @return The rate, such as "512K".
+     */
+    public static String formatRate(long rate) {
+        if (rate > 0 && rate % (1024L * 1024 * 1024) == 0) return rate / (1024L * 1024 * 1024) + "G";
+        if (rate > 0 && rate % (1024L * 1024) == 0) return rate / (1024L * 1024) + "M";
+        if (rate > 0 && rate % 1024L == 0) return rate / 1024L + "K";
+        return Long.toString(rate);
+    }
+
+    @Override
+    public String toString() {
+        List<String> entries = new ArrayList<>();
+        windows.forEach(window -> entries.add(window.toString()));
+        if (defaultRate != UNLIMITED || entries.isEmpty()) {
+            entries.add(formatRate(defaultRate));
+        }
+        return String.join(", ", entries);
+    }
+}
@@ -14,6 +14,9 @@
  */
 package org.example.downloader.util;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Represents a base package with essential metadata.
  * This class is used to encapsulate the common attributes of a package.
@@ -26,6 +29,14 @@ public interface BasePackage {
 
     public String getSha256Digest();
 
+    /**
+     * Gets every digest the package is listed with, keyed by the name of the digest algorithm
+     * as in MultiDigestVerifier. Most packages are only listed with their SHA-256 digest.
+     */
+    public default Map<String, String> getDigests() {
+        return Collections.singletonMap(MultiDigestVerifier.SHA256, getSha256Digest());
+    }
+
     public String uniqueKey();
 
     public default long getByteSize() {
@@ -14,6 +14,7 @@
  */
 package org.example.downloader.util;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
@@ -25,8 +26,10 @@ import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 
@@ -158,6 +161,39 @@ public class BlockChainHelper {
             return lastRow.get().artifact.equals("end-of-blockchain"); // Blockchain is finalized
         }
 
+        /**
+         * Checks that each row of the blockchain links to the row before it, without verifying
+         * the artifacts of the rows. A resumed run relies on this instead of verifying every
+         * artifact, and on the digests to know which artifacts are already registered.
+         *
+         * @return the digests of the rows in the blockchain
+         * @throws IllegalStateException if a row does not link to the row before it
+         */
+        public Set<String> verifyLinks() {
+            Set<String> digests = new HashSet<>();
+            String previousHash = computeHash(blockchainFile.getName());
+            try (BufferedReader reader = Files.newBufferedReader(blockchainFile.toPath(), StandardCharsets.UTF_8)) {
+                // Skip the header
+                String line = reader.readLine();
+                while ((line = reader.readLine()) != null) {
+                    Row row;
+                    try {
+                        row = rowFromString(line);
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalStateException(e.getMessage(), e);
+                    }
+                    if (!row.verifyRowHash(previousHash)) {
+                        throw new IllegalStateException("Invalid row hash: " + row.hash);
+                    }
+                    digests.add(row.digest);
+                    previousHash = row.hash;
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to verify blockchain", e);
+            }
+            return digests;
+        }
+
         /**
          * Adds a new row to the blockchain. The row must be built using the
          * buildNewRowAddHash method of the Row class.
@@ -364,8 +400,7 @@ public class BlockChainHelper {
             if(!Sha256Helper.isValid64CharHex(previousHash)) {
                 throw new IllegalArgumentException("Invalid previous hash: " + previousHash);
             }
-            String newBlock = String.format("%s,%s,%s,%s,%s", previousHash.trim(), artifact, metadata, digest, datetime);
-            return computeHash(newBlock);
+            return computeHash(previousHash.trim() + "," + artifact + "," + metadata + "," + digest + "," + datetime);
         }
 
         /**
@@ -19,11 +19,19 @@ import org.example.downloader.WorkLogger;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import static org.example.downloader.util.BlockChainHelper.rowFromString;
 import static org.example.downloader.util.Sha256Helper.computeHash;
@@ -42,6 +50,20 @@ public class BlockchainVerifier extends AbstractWorkerIterator<BlockchainVerifie
     private final AtomicReference<List<BlockChainHelper.Row>> brokenArtifacts = new AtomicReference<>(new ArrayList<>());
     private final AtomicBoolean brokenChain = new AtomicBoolean(false);
 
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private VerificationCache verificationCache = null;
+    private VerificationMode mode = VerificationMode.DEEP;
+    private int deepScanDays = 0;
+    private final AtomicInteger trustedCount = new AtomicInteger();
+    private Path manifestDir = null;
+
+    private static final String DEVICE_PREFIX = "device:";
+
+    private VerificationOrder order = VerificationOrder.LEDGER;
+    private Deque<LocatedRow> orderedRows = null;
+    private final Map<String, Integer> deviceLimits = new ConcurrentHashMap<>();
+
     public BlockchainVerifier(BlockChainHelper.Blockchain blockchain, WorkLogger workLogger, ArtifactPath artifactPath) {
         this.blockchain = blockchain;
         this.workLogger = workLogger;
@@ -55,8 +77,97 @@ public class BlockchainVerifier extends AbstractWorkerIterator<BlockchainVerifie
         }
     }
 
+    /**
+     * Sets the order the artifacts are verified in, before verification starts.
+     *
+     * @param order The verification order.
+     */
+    public void setOrder(VerificationOrder order) {
+        this.order = order;
+    }
+
+    /**
+     * A row with the place of its artifact on disk, the device and inode are -1 when unknown.
+     */
+    private static class LocatedRow {
+        final BlockChainHelper.Row row;
+        final Path file;
+        final long device;
+        final long inode;
+
+        LocatedRow(BlockChainHelper.Row row, Path file, long device, long inode) {
+            this.row = row;
+            this.file = file;
+            this.device = device;
+            this.inode = inode;
+        }
+    }
+
+    /**
+     * Reads the whole blockchain, checking its links, and orders the rows by where their
+     * artifacts lie on disk. The first device each artifact is found on decides the limit of
+     * that device, one read at a time for a rotational disk. Rows past a broken link are left out.
+     * This looks up every artifact, so it is done once, when the first task is taken.
+     */
+    private void orderByLocality() {
+        List<LocatedRow> rows = new ArrayList<>();
+        List<LocatedRow> endRows = new ArrayList<>();
+        while (stringIterator.hasNext()) {
+            BlockChainHelper.Row row = rowFromString(stringIterator.next());
+            if (!row.verifyRowHash(lastHash)) {
+                brokenChain.compareAndSet(false, true);
+                workLogger.getLogger().severe("Invalid row hash: " + row.hash);
+                break;
+            }
+            lastHash = row.hash;
+            lastRow.set(row);
+            Path file = artifactPath.artifactFile(row);
+            if (blockchain.isFinalized() && row.artifact.equals("end-of-blockchain")) {
+                endRows.add(new LocatedRow(row, file, -1, -1));
+                continue;
+            }
+            long device = -1;
+            long inode = -1;
+            try {
+                Map<String, Object> attributes = Files.readAttributes(file, "unix:dev,ino");
+                device = ((Number) attributes.get("dev")).longValue();
+                inode = ((Number) attributes.get("ino")).longValue();
+                deviceLimits.computeIfAbsent(DEVICE_PREFIX + device,
+                        (key) -> StorageType.detect(file) == StorageType.ROTATIONAL ? 1 : 0);
+            } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+                // A missing artifact fails verification at once, wherever it is ordered
+            }
+            rows.add(new LocatedRow(row, file, device, inode));
+        }
+        rows.sort(Comparator.<LocatedRow>comparingLong((r) -> r.device)
+                .thenComparing((r) -> String.valueOf(r.file.getParent()))
+                .thenComparingLong((r) -> r.inode));
+        orderedRows = new ArrayDeque<>(rows);
+        orderedRows.addAll(endRows);
+    }
+
+    @Override
+    public int getHostLimit(String host) {
+        Integer limit = deviceLimits.get(host);
+        return limit == null ? -1 : limit;
+    }
+
     @Override
     protected VerifyTask createWorker() {
+        if (order == VerificationOrder.LOCALITY) {
+            if (orderedRows == null) {
+                orderByLocality();
+            }
+            LocatedRow located = orderedRows.poll();
+            if (located == null) {
+                // Only when the first row is broken, which fails as it does in ledger order
+                throw new IllegalStateException("Invalid first row hash in " + blockchain.getBlockchainFile());
+            }
+            VerifyTask task = new VerifyTask(workLogger, located.row, blockchain.isFinalized(), located.file);
+            task.device = located.device >= 0 ? DEVICE_PREFIX + located.device : null;
+            return task;
+        }
+
         lastRow.set(rowFromString(stringIterator.next()));
         if (!lastRow.get().verifyRowHash(lastHash)) {
             brokenChain.compareAndSet(false, true);
@@ -69,9 +180,38 @@ public class BlockchainVerifier extends AbstractWorkerIterator<BlockchainVerifie
 
     @Override
     public boolean hasNext() {
+        if (order == VerificationOrder.LOCALITY && orderedRows != null) {
+            return !orderedRows.isEmpty();
+        }
         return stringIterator.hasNext() && !brokenChain.get();
     }
 
+    /**
+     * Sets the cache of verified files and how far it is trusted. Every artifact that is hashed
+     * updates the cache, so a deep verification refreshes it.
+     *
+     * @param verificationCache The cache, or null to keep no cache.
+     * @param mode              The verification mode, without a deep scan the artifacts the
+     *                          cache vouches for are trusted without hashing them.
+     * @param deepScanDays      In the standard mode every artifact is hashed again at least this
+     *                          often, a slice of the archive each day, 0 to trust the cache for good.
+     */
+    public void setVerificationCache(VerificationCache verificationCache, VerificationMode mode, int deepScanDays) {
+        this.verificationCache = verificationCache;
+        this.mode = mode;
+        this.deepScanDays = deepScanDays;
+    }
+
+    /**
+     * Sets the directory of piece manifests. An artifact with a manifest is verified by its
+     * pieces, which are hashed in parallel.
+     *
+     * @param manifestDir The directory, or null to hash every artifact as a whole.
+     */
+    public void setManifestDir(Path manifestDir) {
+        this.manifestDir = manifestDir;
+    }
+
     public boolean isBroken() {
         return brokenChain.get();
     }
@@ -84,16 +224,41 @@ public class BlockchainVerifier extends AbstractWorkerIterator<BlockchainVerifie
         return verifiedArtifacts.get();
     }
 
+    /**
+     * Gets how many of the verified artifacts were trusted without hashing them.
+     *
+     * @return The number of artifacts.
+     */
+    public int getTrustedCount() {
+        return trustedCount.get();
+    }
+
     public interface ArtifactPath {
         Path artifactFile(BlockChainHelper.Row r);
     }
 
+    /**
+     * Checks if the artifact is in the slice of the archive hashed again today, or has been
+     * trusted for longer than a whole round. Each artifact falls in one slice of the round by
+     * its digest, so a run a day hashes the archive again in even parts.
+     */
+    private boolean isDueForDeepScan(BlockChainHelper.Row row, long verifiedTime) {
+        if (deepScanDays <= 0) {
+            return false;
+        }
+        long age = System.currentTimeMillis() - verifiedTime;
+        long today = System.currentTimeMillis() / DAY_MILLIS;
+        return age >= deepScanDays * DAY_MILLIS
+                || (age >= DAY_MILLIS && Math.floorMod(row.getDigest().hashCode(), deepScanDays) == Math.floorMod(today, deepScanDays));
+    }
+
     public class VerifyTask extends AbstractWorker {
 
         private final BlockChainHelper.Row row;
         private final Path artifactFile;
         private final Sha256Helper.Verifier verifierTask;
         private final boolean isFinalized;
+        private String device = null;
 
         public VerifyTask(WorkLogger workLogger, BlockChainHelper.Row row, boolean isFinalized, Path artifactFile) {
             super(workLogger);
@@ -101,6 +266,7 @@ public class BlockchainVerifier extends AbstractWorkerIterator<BlockchainVerifie
             this.artifactFile = artifactFile;
             this.isFinalized = isFinalized;
             this.verifierTask = new Sha256Helper.Verifier(artifactFile, row.getDigest());
+            this.verifierTask.setProgressListener(this::reportProgress);
         }
 
         @Override
@@ -109,21 +275,99 @@ public class BlockchainVerifier extends AbstractWorkerIterator<BlockchainVerifie
                 verifierTask.forceComplete();
                 logger.info("Verification of blockchain " + blockchain.getBlockchainFile() + " has reached EOF properly");
             } else {
-                Sha256Helper.verifySha256(verifierTask);
+                String stamp = VerificationCache.stamp(artifactFile);
+                if(isTrusted(stamp)) {
+                    verifierTask.forceComplete();
+                    reportProgress(artifactFile.toFile().length());
+                    trustedCount.incrementAndGet();
+                    synchronized (verifiedArtifacts) {
+                        verifiedArtifacts.get().add(row);
+                    }
+                    return;
+                }
+
+                if(!verifyPieces()) {
+                    Sha256Helper.verifySha256(verifierTask);
+                }
 
                 if(verifierTask.hasError() || !verifierTask.isComplete()) {
                     synchronized (brokenArtifacts) {
                         brokenArtifacts.get().add(row);
                     }
+                    if(verificationCache != null) {
+                        verificationCache.remove(artifactFile);
+                    }
                     logger.severe("Verifying " + artifactFile + " for " + row.getArtifact() + " with sha256 digest of " + row.getDigest() + " failed.");
                 } else if(!verifierTask.hasError() && verifierTask.isComplete()) {
                     synchronized (verifiedArtifacts) {
                         verifiedArtifacts.get().add(row);
                     }
+                    // A file written to while it was hashed is not vouched for
+                    if(verificationCache != null && stamp != null && stamp.equals(VerificationCache.stamp(artifactFile))) {
+                        verificationCache.put(artifactFile, stamp, row.getDigest());
+                    }
                 }
             }
         }
 
+        /**
+         * Checks if the artifact can be trusted without hashing it. A deep scan trusts nothing
+         * and a missing artifact is never trusted. An artifact the cache vouches for is trusted
+         * until it is due for the rolling deep scan, in a fast scan for good. An artifact never
+         * hashed before or changed since it was hashed is always hashed.
+         */
+        private boolean isTrusted(String stamp) {
+            if (mode == VerificationMode.DEEP || stamp == null || verificationCache == null) {
+                return false;
+            }
+            long verifiedTime = verificationCache.getVerifiedTime(artifactFile, stamp, row.getDigest());
+            if (verifiedTime < 0) {
+                return false;
+            }
+            return mode == VerificationMode.FAST || !isDueForDeepScan(row, verifiedTime);
+        }
+
+        /**
+         * Verifies the artifact by the pieces of its manifest. The manifest was made from the
+         * artifact when it passed verification, so all pieces matching is as good as the whole
+         * digest matching. A mismatch is hashed as a whole again to confirm it.
+         *
+         * @return true if all pieces match, false if they do not or there is no manifest.
+         */
+        private boolean verifyPieces() {
+            if (manifestDir == null) {
+                return false;
+            }
+            PieceManifest manifest = PieceManifest.load(PieceManifest.manifestFile(manifestDir, row.getDigest()));
+            if (manifest == null || artifactFile.toFile().length() != manifest.getTotalSize()) {
+                return false;
+            }
+            LongAdder checked = new LongAdder();
+            try {
+                if (manifest.verify(artifactFile, bytes -> {
+                    checked.add(bytes);
+                    reportProgress(bytes);
+                })) {
+                    verifierTask.forceComplete();
+                    return true;
+                }
+            } catch (IOException e) {
+                // Hashed as a whole, which reports the failure
+            }
+            // The pieces checked are hashed again as a whole
+            reportProgress(-checked.sum());
+            return false;
+        }
+
+        /**
+         * Verification reads from the device of the artifact, whose reads are limited like
+         * the connections to a host.
+         */
+        @Override
+        public String getHost() {
+            return device;
+        }
+
         @Override
         protected void stopProcessImpl() {
             verifierTask.stop();
@@ -139,11 +383,6 @@ public class BlockchainVerifier extends AbstractWorkerIterator<BlockchainVerifie
             return verifierTask.getTime();
         }
 
-        @Override
-        public long getCurrentProcessSize() {
-            return verifierTask.totalBytesProcessed();
-        }
-
         @Override
         public boolean isCompleted() {
             return verifierTask.isComplete();
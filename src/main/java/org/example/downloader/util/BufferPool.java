@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of large buffers shared by all threads. Buffers are not kept per thread,
+ * since a worker on a virtual thread runs on a thread of its own that never comes back, and
+ * a buffer per thread would be allocated for every task. At most a fixed number of buffers
+ * is ever allocated for the pool, once they are all in use a plain heap buffer is handed
+ * out and left to the garbage collector, so direct memory stays bounded however many
+ * transfers are in flight.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final boolean direct;
+    private final ArrayBlockingQueue<ByteBuffer> free;
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    /**
+     * @param bufferSize The size of every buffer.
+     * @param maxBuffers The most buffers the pool allocates and keeps.
+     * @param direct     Whether the pooled buffers are direct buffers.
+     */
+    public BufferPool(int bufferSize, int maxBuffers, boolean direct) {
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.direct = direct;
+        this.free = new ArrayBlockingQueue<>(maxBuffers);
+    }
+
+    /**
+     * Takes a buffer from the pool, it is cleared and must be released when done with.
+     *
+     * @return A pooled buffer, or a heap buffer of the same size if all pooled buffers are in use.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            if (allocated.incrementAndGet() <= maxBuffers) {
+                buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+            } else {
+                allocated.decrementAndGet();
+                return ByteBuffer.allocate(bufferSize);
+            }
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer taken from the pool, a buffer the pool did not allocate is dropped.
+     *
+     * @param buffer The buffer.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer.isDirect() == direct && buffer.capacity() == bufferSize) {
+            free.offer(buffer);
+        }
+    }
+}
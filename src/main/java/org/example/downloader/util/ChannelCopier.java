@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Copies data from a channel into a file through a pooled direct buffer. Every read is reported
+ * right away so progress stays fine-grained, while writes to the file are batched. The
+ * batch size adapts to the link speed: a fast link fills large batches and gets few large
+ * writes, a slow link keeps small batches so that data reaches the file without delay.
+ */
+public class ChannelCopier {
+
+    static final int MIN_BUFFER_SIZE = 16 * 1024;
+    static final int MAX_BUFFER_SIZE = 1024 * 1024;
+    private static final long TARGET_FILL_NANOS = 50_000_000L;
+
+    // Enough for every transfer of a full platform pool to stay below the direct memory default
+    static final int MAX_DIRECT_BUFFERS = 64;
+
+    private static final BufferPool BUFFERS = new BufferPool(MAX_BUFFER_SIZE, MAX_DIRECT_BUFFERS, true);
+
+    /**
+     * Receives the data passing through a copy.
+     */
+    public interface Listener {
+        /**
+         * Called for every read, before the data has been written to the file.
+         *
+         * @param chunk the bytes read, positioned from the first to the last byte of the chunk
+         * @throws IOException to abort the copy
+         */
+        void onRead(ByteBuffer chunk) throws IOException;
+
+        /**
+         * Called when a batch has been written to the file.
+         *
+         * @param position the file position following the written batch
+         * @param length   the number of bytes written
+         * @throws IOException to abort the copy
+         */
+        default void onWritten(long position, int length) throws IOException {
+        }
+    }
+
+    public static final Listener NONE = chunk -> {};
+
+    /**
+     * Copies up to {@code limit} bytes from the source into the target file at the given position.
+     *
+     * @param source    the channel to read from
+     * @param target    the file to write to, written with positional writes
+     * @param position  the file position of the first byte
+     * @param limit     the maximum number of bytes to copy, Long.MAX_VALUE to copy until end of stream
+     * @param isStopped checked between reads, stops the copy when true
+     * @param listener  receives the data as it is read and written
+     * @return the number of bytes copied and written
+     * @throws IOException if reading or writing fails, bytes read before the failure are written first
+     */
+    public static long copy(
+            ReadableByteChannel source,
+            FileChannel target,
+            long position,
+            long limit,
+            BooleanSupplier isStopped,
+            Listener listener
+    ) throws IOException {
+        ByteBuffer buffer = BUFFERS.acquire();
+        int batchSize = MIN_BUFFER_SIZE;
+        long copied = 0;
+        long writePosition = position;
+        long fillStart = System.nanoTime();
+
+        try {
+            while (copied < limit && !isStopped.getAsBoolean()) {
+                buffer.limit((int) Math.min(batchSize, buffer.position() + (limit - copied)));
+                int start = buffer.position();
+                int bytesRead = source.read(buffer);
+                if (bytesRead == -1) {
+                    break;
+                }
+                if (bytesRead > 0) {
+                    ByteBuffer chunk = buffer.duplicate();
+                    chunk.position(start).limit(start + bytesRead);
+                    listener.onRead(chunk);
+                    copied += bytesRead;
+                }
+
+                if (buffer.position() >= batchSize) {
+                    writePosition = flush(buffer, target, writePosition, listener);
+
+                    long fillTime = System.nanoTime() - fillStart;
+                    if (fillTime < TARGET_FILL_NANOS / 2 && batchSize < MAX_BUFFER_SIZE) {
+                        batchSize *= 2;
+                    } else if (fillTime > TARGET_FILL_NANOS * 2 && batchSize > MIN_BUFFER_SIZE) {
+                        batchSize /= 2;
+                    }
+                    fillStart = System.nanoTime();
+                }
+            }
+        } finally {
+            try {
+                flush(buffer, target, writePosition, listener);
+            } finally {
+                BUFFERS.release(buffer);
+            }
+        }
+        return copied;
+    }
+
+    private static long flush(ByteBuffer buffer, FileChannel target, long position, Listener listener) throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        try {
+            while (buffer.hasRemaining()) {
+                position += target.write(buffer, position);
+            }
+        } finally {
+            buffer.clear();
+        }
+        if (length > 0) {
+            listener.onWritten(position, length);
+        }
+        return position;
+    }
+}
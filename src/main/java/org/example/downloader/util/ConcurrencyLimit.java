@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.nio.file.Path;
+
+/**
+ * How many workers an executor runs at once. Written as a single number for a fixed
+ * count, or as "min-max" to let the executor adapt the count to the measured throughput
+ * and error rate within those bounds, for example "2-16".
+ */
+public class ConcurrencyLimit {
+
+    public static final int MAX_WORKERS = 4096;
+
+    public static final ConcurrencyLimit DEFAULT = fixed(8);
+
+    private final int min;
+    private final int max;
+
+    private ConcurrencyLimit(int min, int max) {
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Creates a limit that does not adapt.
+     *
+     * @param workers The number of workers, at least one.
+     * @return The limit.
+     */
+    public static ConcurrencyLimit fixed(int workers) {
+        return new ConcurrencyLimit(Math.max(1, workers), Math.max(1, workers));
+    }
+
+    /**
+     * Creates a fixed limit of one worker per available processor, for CPU bound work.
+     *
+     * @return The limit.
+     */
+    public static ConcurrencyLimit perProcessor() {
+        return fixed(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a fixed limit for work that reads the files in a directory, such as hashing.
+     * Solid state storage keeps one worker per processor busy, a rotational disk is read by
+     * a single worker since concurrent reads only make it seek between files.
+     *
+     * @param directory The directory the files are read from.
+     * @return The limit.
+     */
+    public static ConcurrencyLimit forStorage(Path directory) {
+        if (directory != null && StorageType.detect(directory) == StorageType.ROTATIONAL) {
+            return fixed(1);
+        }
+        return perProcessor();
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public boolean isAdaptive() {
+        return min < max;
+    }
+
+    /**
+     * Lowers the bounds to a maximum.
+     *
+     * @param cap The highest number of workers allowed.
+     * @return This limit if it is within the cap, otherwise a limit with both bounds capped.
+     */
+    public ConcurrencyLimit cappedAt(int cap) {
+        return max <= cap ? this : new ConcurrencyLimit(Math.min(min, cap), cap);
+    }
+
+    /**
+     * Parses a limit, an empty or null value gives the default.
+     *
+     * @param value        The limit as written in the configuration.
+     * @param defaultLimit The limit to use when no value is given.
+     * @return The limit.
+     * @throws IllegalArgumentException if the value is not a valid limit.
+     */
+    public static ConcurrencyLimit parse(String value, ConcurrencyLimit defaultLimit) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultLimit;
+        }
+        String[] bounds = value.trim().split("\\s*-\\s*", -1);
+        if (bounds.length > 2) {
+            throw new IllegalArgumentException("Invalid concurrency: " + value);
+        }
+        try {
+            int min = Integer.parseInt(bounds[0]);
+            int max = bounds.length == 2 ? Integer.parseInt(bounds[1]) : min;
+            if (min < 1 || max < min || max > MAX_WORKERS) {
+                throw new IllegalArgumentException("Invalid concurrency: " + value);
+            }
+            return new ConcurrencyLimit(min, max);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid concurrency: " + value, e);
+        }
+    }
+
+    /**
+     * Checks whether a value can be parsed as a limit.
+     *
+     * @param value The limit as written in the configuration.
+     * @return true if the value is a valid limit, false otherwise.
+     */
+    public static boolean isValid(String value) {
+        try {
+            parse(value, DEFAULT);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return isAdaptive() ? min + "-" + max : Integer.toString(min);
+    }
+}
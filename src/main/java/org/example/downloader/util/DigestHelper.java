@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 digests and hexadecimal strings for the hot paths, such as checking every row of a
+ * blockchain. Every thread reuses one digest and its output buffers instead of looking up a
+ * new digest per call, and hexadecimal is written from a table instead of a string per byte.
+ * The digest of a thread must be done with before the thread hashes anything else, so it is
+ * never handed to code that might hash on its own. The per-thread state is a digest and a
+ * few dozen bytes, a virtual thread that runs a single task leaves it to the garbage
+ * collector, large read buffers come from a shared pool instead.
+ */
+public class DigestHelper {
+
+    public static final int SHA256_LENGTH = 32;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(DigestHelper::newSha256);
+    private static final ThreadLocal<byte[]> DIGEST_BUFFER = ThreadLocal.withInitial(() -> new byte[SHA256_LENGTH]);
+    private static final ThreadLocal<char[]> HEX_BUFFER = ThreadLocal.withInitial(() -> new char[SHA256_LENGTH * 2]);
+
+    /**
+     * Creates a SHA-256 digest of its own, for hashing that is fed over a longer time.
+     *
+     * @return A new digest.
+     */
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 hash algorithm not available!", e);
+        }
+    }
+
+    /**
+     * Gets the SHA-256 digest of the current thread, reset and ready for use.
+     *
+     * @return The digest of the thread.
+     */
+    public static MessageDigest sha256() {
+        MessageDigest sha256 = SHA256.get();
+        sha256.reset();
+        return sha256;
+    }
+
+    /**
+     * Finishes a SHA-256 digest as a lowercase hexadecimal string.
+     *
+     * @param sha256 The digest, it is reset.
+     * @return The digest as 64 hexadecimal characters.
+     */
+    public static String finishHex(MessageDigest sha256) {
+        byte[] digest = DIGEST_BUFFER.get();
+        try {
+            sha256.digest(digest, 0, SHA256_LENGTH);
+        } catch (DigestException e) {
+            throw new IllegalArgumentException("Not a SHA-256 digest: " + sha256.getAlgorithm(), e);
+        }
+        return toHex(digest, SHA256_LENGTH, HEX_BUFFER.get());
+    }
+
+    /**
+     * Hashes a string encoded as UTF-8.
+     *
+     * @param data The string.
+     * @return The SHA-256 digest as a lowercase hexadecimal string.
+     */
+    public static String sha256Hex(String data) {
+        MessageDigest sha256 = sha256();
+        sha256.update(data.getBytes(StandardCharsets.UTF_8));
+        return finishHex(sha256);
+    }
+
+    /**
+     * Converts bytes to a lowercase hexadecimal string.
+     *
+     * @param bytes The bytes.
+     * @return Two hexadecimal characters per byte.
+     */
+    public static String toHex(byte[] bytes) {
+        char[] hex = bytes.length <= SHA256_LENGTH ? HEX_BUFFER.get() : new char[bytes.length * 2];
+        return toHex(bytes, bytes.length, hex);
+    }
+
+    private static String toHex(byte[] bytes, int length, char[] hex) {
+        for (int i = 0; i < length; i++) {
+            int value = bytes[i] & 0xff;
+            hex[i * 2] = HEX_DIGITS[value >>> 4];
+            hex[i * 2 + 1] = HEX_DIGITS[value & 0x0f];
+        }
+        return new String(hex, 0, length * 2);
+    }
+
+    /**
+     * Checks if a string is a SHA-256 digest, 64 hexadecimal characters in either case.
+     *
+     * @param input The string.
+     * @return true if the string is 64 hexadecimal characters.
+     */
+    public static boolean isHex64(String input) {
+        if (input == null || input.length() != SHA256_LENGTH * 2) {
+            return false;
+        }
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -16,16 +16,38 @@ package org.example.downloader.util;
 
 import org.example.downloader.WorkLogger;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
 
 /**
  * Utility class for downloading files and querying file sizes from URLs.
@@ -34,21 +56,133 @@ import java.util.Set;
 public class DownloadHelper {
 
     static final int BUFFER_SIZE = 8192;
-    private static final int CONNECT_TIMEOUT = 10000;
-    private static final int READ_TIMEOUT = 30000;
 
-    private static HttpURLConnection setupConnection(URL url, String method, String rangeHeader) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        if (method != null) {
-            connection.setRequestMethod(method);
+    static final long SEGMENT_THRESHOLD = 64L * 1024 * 1024;
+    static final int SEGMENT_COUNT = 4;
+    private static final long SEGMENT_SAVE_INTERVAL = 4L * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".segments";
+
+    private static volatile HttpTransport transport = HttpTransport.Engine.POOLED.create();
+
+    private static final BandwidthLimiter bandwidthLimiter = new BandwidthLimiter(BandwidthSchedule.NONE);
+
+    private static volatile HttpCache httpCache = null;
+
+    private static final StallWatchdog stallWatchdog = new StallWatchdog();
+
+    static {
+        stallWatchdog.setSharedRate(bandwidthLimiter::getRate);
+    }
+
+    private static final long SPEED_WINDOW = 5000;
+
+    /**
+     * Gets the transport engine all requests are sent through.
+     *
+     * @return The current transport engine.
+     */
+    public static HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Replaces the transport engine, the previous engine is closed.
+     *
+     * @param newTransport The transport engine to use from now on.
+     */
+    public static void setTransport(HttpTransport newTransport) {
+        HttpTransport oldTransport = transport;
+        transport = newTransport;
+        if (oldTransport != newTransport) {
+            oldTransport.close();
         }
-        if (rangeHeader != null) {
-            connection.setRequestProperty("Range", rangeHeader);
+    }
+
+    /**
+     * Gets the limiter that all downloads share their bandwidth through.
+     *
+     * @return The global bandwidth limiter.
+     */
+    public static BandwidthLimiter getBandwidthLimiter() {
+        return bandwidthLimiter;
+    }
+
+    /**
+     * Gets the watchdog that aborts stalled transfers.
+     *
+     * @return The global stall watchdog.
+     */
+    public static StallWatchdog getStallWatchdog() {
+        return stallWatchdog;
+    }
+
+    /**
+     * Gets the cache of validators used for conditional requests.
+     *
+     * @return The HTTP cache, or null if conditional requests are disabled.
+     */
+    public static HttpCache getHttpCache() {
+        return httpCache;
+    }
+
+    /**
+     * Sets the cache of validators used for conditional requests.
+     *
+     * @param newHttpCache The HTTP cache, or null to disable conditional requests.
+     */
+    public static void setHttpCache(HttpCache newHttpCache) {
+        httpCache = newHttpCache;
+    }
+
+    private static HttpTransport.Response setupConnection(URL url, String method, String rangeHeader) throws IOException {
+        return setupConnection(url, method, rangeHeader, true);
+    }
+
+    private static HttpTransport.Response setupConnection(URL url, String method, String rangeHeader, boolean followRedirects) throws IOException {
+        Map<String, String> headers = rangeHeader == null ? Map.of() : Map.of("Range", rangeHeader);
+        return transport.request(url, method, headers, followRedirects);
+    }
+
+    /**
+     * Opens a GET request and returns the response body, read within the bandwidth limit.
+     * Closing the stream releases the connection.
+     *
+     * @param url The URL to download from.
+     * @return The body of the response.
+     * @throws IOException if the request fails or the server does not answer with 200.
+     */
+    public static InputStream openStream(URL url) throws IOException {
+        HttpTransport.Response response = setupConnection(url, "GET", null);
+        if (response.getStatusCode() != HttpURLConnection.HTTP_OK) {
+            response.close();
+            throw new IOException("HTTP error code: " + response.getStatusCode() + " for " + url);
         }
-        connection.setConnectTimeout(CONNECT_TIMEOUT);
-        connection.setReadTimeout(READ_TIMEOUT);
-        connection.connect();
-        return connection;
+        // Buffered on top of the limit, so that reading a byte at a time pays for whole buffers
+        return new BufferedInputStream(new FilterInputStream(response.getBody()) {
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int bytesRead = super.read(buffer, offset, length);
+                if (bytesRead > 0) {
+                    bandwidthLimiter.acquire(bytesRead, () -> false);
+                }
+                return bytesRead;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    response.close();
+                }
+            }
+        });
     }
 
     /**
@@ -58,16 +192,25 @@ public class DownloadHelper {
         private final URL url;
         private final Path filePath;
 
-        private float startTime;
-        private boolean hasExited = false;
+        private long startTime;
+        private volatile boolean hasExited = false;
         private boolean isComplete = false;
         private boolean timedOut = false;
         private boolean httpError = false;
+        private boolean notModified = false;
 
-        private float speed = 0.0f;
+        private volatile ThroughputMeter meter = null;
+        private volatile boolean stalled = false;
 
         private int currentDownloadSize = 0;
 
+        private IncrementalDigest digest = null;
+        // Locks instead of monitors, so that a virtual thread doing file I/O under them can unmount
+        private final ReentrantLock digestLock = new ReentrantLock();
+        private final ReentrantLock segmentLock = new ReentrantLock();
+        private String rememberedSha256 = null;
+        private Collection<String> digestAlgorithms = Collections.emptySet();
+
         /**
          * Constructs a Download object with the specified URL and file path.
          *
@@ -107,6 +250,15 @@ public class DownloadHelper {
             hasExited = true;
         }
 
+        /**
+         * Checks if the download has been stopped.
+         *
+         * @return true if stop has been called, false otherwise.
+         */
+        public boolean isStopped() {
+            return hasExited;
+        }
+
         /**
          * Gets the elapsed time since the download started.
          *
@@ -117,12 +269,39 @@ public class DownloadHelper {
         }
 
         /**
-         * Gets the current download speed in bytes per second.
+         * Gets the current download speed in bytes per second, measured over the last few seconds.
          *
          * @return The download speed.
          */
         public float getSpeed() {
-            return speed;
+            ThroughputMeter current = meter;
+            return current == null ? 0.0f : current.getRate(SPEED_WINDOW);
+        }
+
+        /**
+         * Checks if the download was aborted for staying below the low speed limit.
+         *
+         * @return true if the download stalled, false otherwise.
+         */
+        public boolean hasStalled() {
+            return stalled;
+        }
+
+        private void start() {
+            startTime = System.currentTimeMillis();
+            meter = new ThroughputMeter();
+        }
+
+        /**
+         * Starts the speed window over right before the first byte of the body is read, so that
+         * setting up the connection and hashing a resumed prefix do not count as a slow transfer.
+         */
+        private void restartMeter() {
+            meter = new ThroughputMeter();
+        }
+
+        private void record(long bytes) {
+            meter.record(bytes);
         }
 
 
@@ -131,7 +310,39 @@ public class DownloadHelper {
         }
 
         public void enforceCurrentByte(long currentByte) {
+            setCurrentByte(currentByte);
+        }
+
+        /**
+         * Sets the listener told about progress, it is called with the change in downloaded
+         * bytes, which is negative when a partial file is discarded.
+         *
+         * @param progressListener Called with the number of bytes.
+         */
+        public void setProgressListener(LongConsumer progressListener) {
+            this.progressListener = progressListener;
+        }
+
+        /**
+         * Sets the digests computed while the file is written besides SHA-256, so that checking
+         * them takes no read of the file once it is complete.
+         *
+         * @param digestAlgorithms The names of the digest algorithms, such as "SHA-512".
+         */
+        public void setDigestAlgorithms(Collection<String> digestAlgorithms) {
+            this.digestAlgorithms = digestAlgorithms;
+        }
+
+        private void setCurrentByte(long currentByte) {
+            long change = currentByte - this.currentByte;
             this.currentByte = currentByte;
+            progressListener.accept(change);
+        }
+
+        // Segments add concurrently, they synchronize on the download
+        private void addDownloaded(long bytes) {
+            bytesDownloaded += bytes;
+            progressListener.accept(bytes);
         }
 
         /**
@@ -155,15 +366,74 @@ public class DownloadHelper {
             return httpError;
         }
 
+        /**
+         * Checks if the server confirmed that the local copy is up to date.
+         *
+         * @return true if a conditional request was answered with 304 Not Modified, false otherwise.
+         */
+        public boolean isNotModified() {
+            return notModified;
+        }
+
 
         private long totalSize = 0;
 
         public long totalByteSize() { return totalSize; }
 
-        private long bytesDownloaded = 0;
-        private long currentByte = 0;
+        private volatile long bytesDownloaded = 0;
+        private volatile long currentByte = 0;
+        private volatile LongConsumer progressListener = bytes -> {};
 
         public long totalBytesDownloaded() { return bytesDownloaded + currentByte; }
+
+        /**
+         * Gets the SHA-256 digest computed while the file was written.
+         *
+         * For a file confirmed unchanged by the server it is the digest remembered from when
+         * the file was written.
+         *
+         * @return The digest as a hexadecimal string, or null if the download is not complete
+         * or the digest does not cover the whole file.
+         */
+        public String getComputedSha256() {
+            if (notModified) {
+                return rememberedSha256;
+            }
+            if (!isComplete || digest == null || digest.getPosition() != totalSize) {
+                return null;
+            }
+            return digest.finish();
+        }
+
+        /**
+         * Gets all the digests computed while the file was written, keyed by algorithm.
+         *
+         * @return The digests as hexadecimal strings, only the SHA-256 digest for a file
+         * confirmed unchanged by the server, empty if the SHA-256 digest is not known.
+         */
+        public Map<String, String> getComputedDigests() {
+            String sha256 = getComputedSha256();
+            if (sha256 == null) {
+                return Collections.emptyMap();
+            }
+            if (notModified) {
+                return Collections.singletonMap(MultiDigestVerifier.SHA256, sha256);
+            }
+            return digest.getDigests();
+        }
+
+        /**
+         * Gets the piece manifest computed while the file was written.
+         *
+         * @return The manifest, or null if the digest of the whole file is not known or the
+         * file was too small to hash its pieces.
+         */
+        public PieceManifest getPieceManifest() {
+            if (notModified || getComputedSha256() == null) {
+                return null;
+            }
+            return digest.getPieceManifest();
+        }
     }
 
     /**
@@ -176,41 +446,41 @@ public class DownloadHelper {
     public static long continueDownload(Download download, WorkLogger logger) {
         try {
             if (Files.exists(download.filePath)) {
-                download.currentByte = Files.size(download.filePath);
+                download.setCurrentByte(Files.size(download.filePath));
             } else {
                 Files.createDirectories(download.filePath.getParent());
                 Files.createFile(download.filePath);
             }
 
-            download.startTime = System.currentTimeMillis();
-            HttpURLConnection connection = (HttpURLConnection) download.url.openConnection();
+            download.start();
+            String range = download.currentByte > 0 ? "bytes=" + download.currentByte + "-" : null;
+            HttpTransport.Response connection = setupConnection(download.url, "GET", range);
             try {
-                if (download.currentByte > 0) {
-                    connection.setRequestProperty("Range", "bytes=" + download.currentByte + "-");
-                }
-                connection.setConnectTimeout(CONNECT_TIMEOUT);
-                connection.setReadTimeout(READ_TIMEOUT);
-
-                int responseCode = connection.getResponseCode();
+                int responseCode = connection.getStatusCode();
                 if (responseCode != HttpURLConnection.HTTP_OK && responseCode != HttpURLConnection.HTTP_PARTIAL) {
                     throw new IOException("HTTP error code: " + responseCode + " for " + download.url);
                 }
+                if (responseCode == HttpURLConnection.HTTP_OK && download.currentByte > 0) {
+                    // The server ignored the range, so the whole file is sent again
+                    download.setCurrentByte(0);
+                }
+
+                download.totalSize = connection.getContentLength() + download.currentByte;
 
-                download.totalSize = connection.getContentLengthLong() + download.currentByte;
+                // Hash the already downloaded prefix once, the rest is hashed as it arrives
+                download.digest = new IncrementalDigest(connection.getContentLength() < 0 ? -1 : download.totalSize, download.digestAlgorithms);
+                download.digest.catchUp(download.filePath, download.currentByte);
 
+                download.restartMeter();
+                StallWatchdog.Watch watch = watchStall(download, download.meter, connection);
                 try (
-                        InputStream inputStream = connection.getInputStream();
-                        RandomAccessFile outputFile = new RandomAccessFile(download.filePath.toFile(), "rw")
+                        ReadableByteChannel inputChannel = Channels.newChannel(connection.getBody());
+                        FileChannel outputChannel = FileChannel.open(download.filePath, StandardOpenOption.WRITE)
                 ) {
-                    outputFile.seek(download.currentByte);
-
-                    byte[] buffer = new byte[BUFFER_SIZE];
-                    int bytesRead;
-                    while ((bytesRead = inputStream.read(buffer)) != -1 && !download.hasExited) {
-                        outputFile.write(buffer, 0, bytesRead);
-                        download.bytesDownloaded += bytesRead;
-                        download.speed = download.bytesDownloaded / download.getTime();
-                    }
+                    outputChannel.truncate(download.currentByte);
+                    ChannelCopier.copy(inputChannel, outputChannel, download.currentByte, Long.MAX_VALUE, () -> download.hasExited, progressListener(download));
+                } finally {
+                    watch.close();
                 }
                 if(download.bytesDownloaded + download.currentByte == download.totalSize) {
                     download.isComplete = true;
@@ -218,25 +488,524 @@ public class DownloadHelper {
             } catch (SocketTimeoutException e) {
                 download.timedOut = true;
             } finally {
-                connection.disconnect();
+                connection.close();
             }
         } catch (IOException e) {
+            handleFailure(download, e, logger, "Unexpected error when downloading ");
+        }
+        return download.bytesDownloaded;
+    }
+
+    private static ChannelCopier.Listener progressListener(Download download) {
+        return chunk -> {
+            bandwidthLimiter.acquire(chunk.remaining(), () -> download.hasExited);
+            download.addDownloaded(chunk.remaining());
+            download.record(chunk.remaining());
+            download.digest.update(chunk);
+        };
+    }
+
+    /**
+     * Puts a transfer under watch of the stall watchdog, which marks the download as stalled
+     * and closes the connection when the transfer is too slow for too long.
+     */
+    private static StallWatchdog.Watch watchStall(Download download, ThroughputMeter meter, HttpTransport.Response connection) {
+        return stallWatchdog.watch(meter, connection, () -> download.stalled = true);
+    }
+
+    /**
+     * Classifies a failed transfer. A transfer aborted by the stall watchdog fails on its closed
+     * connection, it counts as timed out so that it is retried elsewhere rather than reported as an error.
+     */
+    private static void handleFailure(Download download, IOException e, WorkLogger logger, String message) {
+        if (download.stalled) {
+            download.timedOut = true;
+            logger.getLogger().warning("Download of " + download.url + " aborted, slower than "
+                    + stallWatchdog.getLowSpeedLimit() + " bytes/s for " + stallWatchdog.getLowSpeedTime() + " s.");
+        } else {
             download.httpError = true;
-            logger.getLogger().severe("Unexpected error when downloading " + download.url + ": " + e.getMessage());
+            logger.getLogger().severe(message + download.url + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Refreshes a local copy of a file that may change on the server, such as repository metadata.
+     * The request is made conditional on the validators stored in the HTTP cache, so an unchanged
+     * file is answered with 304 Not Modified and not transferred at all. A changed file is
+     * downloaded beside the local copy and replaces it once complete, an interrupted refresh
+     * starts over on the next run.
+     *
+     * @param download The Download object containing the URL and file path.
+     * @param logger   The logger to report errors to.
+     * @return The number of bytes downloaded during this run.
+     */
+    public static long refreshDownload(Download download, WorkLogger logger) {
+        Path partFile = download.filePath.resolveSibling(download.filePath.getFileName() + ".part");
+        HttpCache cache = httpCache;
+        try {
+            Files.createDirectories(download.filePath.getParent());
+            Map<String, String> headers = cache == null ? Map.of() : cache.conditionalHeaders(download.url, download.filePath);
+
+            download.start();
+            try (HttpTransport.Response connection = transport.request(download.url, "GET", headers, true)) {
+                int responseCode = connection.getStatusCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    download.notModified = true;
+                    download.rememberedSha256 = cache == null ? null : cache.getSha256(download.url, download.filePath);
+                    download.setCurrentByte(Files.size(download.filePath));
+                    download.totalSize = download.currentByte;
+                    download.isComplete = true;
+                    return 0;
+                }
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("HTTP error code: " + responseCode + " for " + download.url);
+                }
+
+                download.setCurrentByte(0);
+                download.totalSize = connection.getContentLength();
+                download.digest = new IncrementalDigest(download.totalSize, download.digestAlgorithms);
+                StallWatchdog.Watch watch = watchStall(download, download.meter, connection);
+                try (
+                        ReadableByteChannel inputChannel = Channels.newChannel(connection.getBody());
+                        FileChannel outputChannel = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                ) {
+                    ChannelCopier.copy(inputChannel, outputChannel, 0, Long.MAX_VALUE, () -> download.hasExited, progressListener(download));
+                } finally {
+                    watch.close();
+                }
+
+                if (!download.hasExited && (download.totalSize < 0 || download.bytesDownloaded == download.totalSize)) {
+                    download.totalSize = download.bytesDownloaded;
+                    Files.move(partFile, download.filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    download.isComplete = true;
+                    if (cache != null) {
+                        cache.store(download.url, connection, download.filePath, download.getComputedSha256());
+                    }
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            download.timedOut = true;
+        } catch (IOException e) {
+            handleFailure(download, e, logger, "Unexpected error when refreshing ");
+        }
+        return download.bytesDownloaded;
+    }
+
+    /**
+     * Downloads a file, choosing a segmented multi-connection transfer for large files
+     * and a single resumable connection for everything else.
+     *
+     * @param download     The Download object containing the URL and file path.
+     * @param expectedSize The expected size of the file in bytes.
+     * @param logger       The logger to report errors to.
+     * @return The number of bytes downloaded during this run.
+     */
+    public static long download(Download download, long expectedSize, WorkLogger logger) {
+        if (expectedSize >= SEGMENT_THRESHOLD || isSegmented(download.filePath)) {
+            return segmentedDownload(download, SEGMENT_COUNT, logger);
+        }
+        return continueDownload(download, logger);
+    }
+
+    /**
+     * Returns the path of the sidecar file keeping per-segment progress of a segmented download.
+     *
+     * @param filePath The path of the download.
+     * @return The path of the sidecar file.
+     */
+    public static Path segmentFile(Path filePath) {
+        return filePath.resolveSibling(filePath.getFileName() + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Checks whether a segmented download of the file is in progress. The file of such a
+     * download is preallocated to its full size, so the file size alone says nothing about
+     * how much of it has been downloaded.
+     *
+     * @param filePath The path of the download.
+     * @return true if a segment sidecar exists for the file, false otherwise.
+     */
+    public static boolean isSegmented(Path filePath) {
+        return Files.exists(segmentFile(filePath));
+    }
+
+    /**
+     * A byte range of a segmented download, the end is exclusive.
+     */
+    static class Segment {
+        final long start;
+        final long end;
+        volatile long position;
+
+        Segment(long start, long end, long position) {
+            this.start = start;
+            this.end = end;
+            this.position = position;
+        }
+
+        long remaining() {
+            return end - position;
+        }
+    }
+
+    /**
+     * Downloads a file over several parallel connections, each fetching its own byte range into
+     * a preallocated file. The progress of every segment is saved in a sidecar file so that a
+     * resume continues all segments where they left off. Falls back to a single connection
+     * if the server does not accept range requests or does not report the file size.
+     *
+     * @param download     The Download object containing the URL and file path.
+     * @param segmentCount The number of parallel connections to use.
+     * @param logger       The logger to report errors to.
+     * @return The number of bytes downloaded during this run.
+     */
+    public static long segmentedDownload(Download download, int segmentCount, WorkLogger logger) {
+        Path segmentFile = segmentFile(download.filePath);
+        try {
+            long totalSize;
+            HttpTransport.Response probe = setupConnection(download.url, "HEAD", null);
+            try {
+                int responseCode = probe.getStatusCode();
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("HTTP error code: " + responseCode + " for " + download.url);
+                }
+                totalSize = probe.getContentLength();
+                if (totalSize <= 0 || !"bytes".equalsIgnoreCase(probe.getHeader("Accept-Ranges"))) {
+                    Files.deleteIfExists(segmentFile);
+                    return continueDownload(download, logger);
+                }
+            } finally {
+                probe.close();
+            }
+
+            Files.createDirectories(download.filePath.getParent());
+            List<Segment> segments = loadSegments(segmentFile, totalSize);
+            if (segments != null && (!Files.exists(download.filePath) || Files.size(download.filePath) != totalSize)) {
+                segments = null;
+            }
+            if (segments == null) {
+                // Only the file of a single connection download is a prefix of what was fetched,
+                // a file with a sidecar was preallocated and its size says nothing of its progress
+                long done = 0;
+                if (!Files.exists(segmentFile) && Files.exists(download.filePath) && Files.size(download.filePath) <= totalSize) {
+                    done = Files.size(download.filePath);
+                }
+                segments = splitSegments(done, totalSize, segmentCount);
+                // The sidecar is saved before the file is preallocated, so that a preallocated
+                // file is never left without one
+                saveSegments(download, segmentFile, totalSize, segments);
+                try (RandomAccessFile file = new RandomAccessFile(download.filePath.toFile(), "rw")) {
+                    if (done == 0) {
+                        file.setLength(0);
+                    }
+                    file.setLength(totalSize);
+                }
+            }
+
+            long remaining = 0;
+            for (Segment segment : segments) {
+                remaining += segment.remaining();
+            }
+            download.totalSize = totalSize;
+            download.setCurrentByte(totalSize - remaining);
+            download.start();
+
+            List<Segment> pending = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (segment.remaining() > 0) {
+                    pending.add(segment);
+                }
+            }
+
+            // The segments are hashed in offset order, each as it extends the hashed prefix
+            download.digest = new IncrementalDigest(totalSize, download.digestAlgorithms);
+            download.digest.catchUp(download.filePath, pending.isEmpty() ? totalSize : pending.get(0).position);
+            download.restartMeter();
+
+            if (!pending.isEmpty()) {
+                final List<Segment> allSegments = segments;
+                ExecutorService segmentPool = Executors.newFixedThreadPool(pending.size());
+                try (FileChannel channel = FileChannel.open(download.filePath, StandardOpenOption.WRITE)) {
+                    List<Future<Void>> futures = new ArrayList<>();
+                    for (Segment segment : pending) {
+                        futures.add(segmentPool.submit(
+                                (Callable<Void>) () -> fetchSegment(download, segment, true, channel, segmentFile, allSegments)
+                        ));
+                    }
+                    for (Future<Void> future : futures) {
+                        try {
+                            future.get();
+                        } catch (ExecutionException e) {
+                            if (e.getCause() instanceof SocketTimeoutException || download.stalled) {
+                                download.timedOut = true;
+                            } else {
+                                download.httpError = true;
+                                logger.getLogger().severe("Unexpected error when downloading segment of " + download.url + ": " + e.getCause().getMessage());
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    download.hasExited = true;
+                } finally {
+                    segmentPool.shutdownNow();
+                    saveSegments(download, segmentFile, totalSize, segments);
+                }
+            }
+
+            remaining = 0;
+            for (Segment segment : segments) {
+                remaining += segment.remaining();
+            }
+            if (remaining == 0) {
+                // Hashes what a segment had written before the prefix reached it, if anything
+                download.digest.catchUp(download.filePath, totalSize);
+                Files.deleteIfExists(segmentFile);
+                download.isComplete = true;
+            }
+        } catch (SocketTimeoutException e) {
+            download.timedOut = true;
+        } catch (IOException e) {
+            handleFailure(download, e, logger, "Unexpected error when downloading ");
         }
         return download.bytesDownloaded;
     }
 
+    /**
+     * Repairs a damaged file from the piece manifest of its intact copy. The pieces that do not
+     * match the manifest are fetched again with range requests and written in place, the rest
+     * of the file is kept.
+     *
+     * @param download The Download object containing the URL and file path.
+     * @param manifest The piece manifest of the intact file.
+     * @param logger   The logger to report errors to.
+     * @return The number of bytes fetched, or -1 if the repair failed.
+     */
+    public static long repairDownload(Download download, PieceManifest manifest, WorkLogger logger) {
+        try {
+            List<Segment> damaged = manifest.findDamaged(download.filePath);
+            long before = download.bytesDownloaded;
+            download.start();
+            try (FileChannel channel = FileChannel.open(download.filePath, StandardOpenOption.WRITE)) {
+                for (Segment segment : damaged) {
+                    if (download.hasExited) {
+                        return -1;
+                    }
+                    fetchSegment(download, segment, false, channel, null, null);
+                    if (segment.remaining() > 0) {
+                        return -1;
+                    }
+                }
+            }
+            return download.bytesDownloaded - before;
+        } catch (SocketTimeoutException e) {
+            download.timedOut = true;
+        } catch (IOException e) {
+            handleFailure(download, e, logger, "Unexpected error when repairing ");
+        }
+        return -1;
+    }
+
+    private static Void fetchSegment(
+            Download download,
+            Segment segment,
+            boolean hashInline,
+            FileChannel channel,
+            Path segmentFile,
+            List<Segment> segments
+    ) throws IOException {
+        String range = "bytes=" + segment.position + "-" + (segment.end - 1);
+        HttpTransport.Response connection = setupConnection(download.url, "GET", range);
+        try {
+            int responseCode = connection.getStatusCode();
+            if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("Range request not honored, HTTP response code: " + responseCode + " for " + download.url);
+            }
+
+            // Each segment is watched on its own, so one stalled connection is noticed among healthy ones
+            ThroughputMeter segmentMeter = new ThroughputMeter();
+            StallWatchdog.Watch watch = watchStall(download, segmentMeter, connection);
+            try (ReadableByteChannel inputChannel = Channels.newChannel(connection.getBody())) {
+                ChannelCopier.copy(inputChannel, channel, segment.position, segment.remaining(), () -> download.hasExited, new ChannelCopier.Listener() {
+                    private long unsaved = 0;
+                    // The file position of the next byte read, ahead of the bytes written
+                    private long readPosition = segment.position;
+
+                    @Override
+                    public void onRead(ByteBuffer chunk) throws IOException {
+                        int bytesRead = chunk.remaining();
+                        bandwidthLimiter.acquire(bytesRead, () -> download.hasExited);
+                        if (hashInline) {
+                            hashRead(download, readPosition, chunk);
+                        }
+                        readPosition += bytesRead;
+                        segmentMeter.record(bytesRead);
+                        synchronized (download) {
+                            download.addDownloaded(bytesRead);
+                        }
+                        download.record(bytesRead);
+                    }
+
+                    @Override
+                    public void onWritten(long position, int length) throws IOException {
+                        // Only bytes that reached the file count as progress in the sidecar
+                        segment.position = position;
+                        if (hashInline) {
+                            hashWritten(download, segments);
+                        }
+                        unsaved += length;
+                        if (segmentFile != null && unsaved >= SEGMENT_SAVE_INTERVAL) {
+                            saveSegments(download, segmentFile, download.totalSize, segments);
+                            unsaved = 0;
+                        }
+                    }
+                });
+            } finally {
+                watch.close();
+            }
+        } finally {
+            connection.close();
+        }
+        return null;
+    }
+
+    /**
+     * Feeds the digest of a segmented download a chunk that continues the hashed prefix, the
+     * chunk is hashed from memory before it is written. Other chunks are left for later.
+     */
+    private static void hashRead(Download download, long position, ByteBuffer chunk) {
+        download.digestLock.lock();
+        try {
+            if (position == download.digest.getPosition()) {
+                download.digest.update(chunk);
+            }
+        } finally {
+            download.digestLock.unlock();
+        }
+    }
+
+    /**
+     * Extends the hashed prefix of a segmented download over the bytes that follow it on disk.
+     * The bytes a segment wrote before the prefix reached it are read back once, while the other
+     * segments are still transferring, and from then on the chunks it reads continue the prefix
+     * and are hashed from memory.
+     */
+    private static void hashWritten(Download download, List<Segment> segments) throws IOException {
+        long written = 0;
+        for (Segment segment : segments) {
+            written = segment.position;
+            if (segment.remaining() > 0) {
+                break;
+            }
+        }
+        download.digestLock.lock();
+        try {
+            download.digest.catchUp(download.filePath, written);
+        } finally {
+            download.digestLock.unlock();
+        }
+    }
+
+    private static List<Segment> splitSegments(long done, long totalSize, int segmentCount) {
+        List<Segment> segments = new ArrayList<>();
+        long remaining = totalSize - done;
+        int count = (int) Math.max(1, Math.min(segmentCount, remaining / BUFFER_SIZE));
+        long segmentSize = remaining / count;
+        long start = done;
+        for (int i = 0; i < count; i++) {
+            long end = (i == count - 1) ? totalSize : start + segmentSize;
+            segments.add(new Segment(start, end, start));
+            start = end;
+        }
+        return segments;
+    }
+
+    /**
+     * Loads the segments of a previously started segmented download. The sidecar holds the
+     * total size on the first line followed by one "start,end,position" line per segment.
+     *
+     * @return The saved segments or null if there is no usable sidecar for this file size.
+     */
+    private static List<Segment> loadSegments(Path segmentFile, long totalSize) throws IOException {
+        if (!Files.exists(segmentFile)) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(segmentFile, StandardCharsets.UTF_8);
+        try {
+            if (lines.isEmpty() || Long.parseLong(lines.get(0).trim()) != totalSize) {
+                return null;
+            }
+            List<Segment> segments = new ArrayList<>();
+            for (String line : lines.subList(1, lines.size())) {
+                if (line.trim().isEmpty()) continue;
+                String[] parts = line.split(",");
+                segments.add(new Segment(
+                        Long.parseLong(parts[0].trim()),
+                        Long.parseLong(parts[1].trim()),
+                        Long.parseLong(parts[2].trim())
+                ));
+            }
+            return segments.isEmpty() ? null : segments;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the segments of a download to its sidecar. The segments of one download save under
+     * its own lock, as they share the temporary file, while other downloads save in parallel.
+     */
+    private static void saveSegments(Download download, Path segmentFile, long totalSize, List<Segment> segments) throws IOException {
+        download.segmentLock.lock();
+        try {
+            Path tempFile = segmentFile.resolveSibling(segmentFile.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                writer.write(Long.toString(totalSize));
+                writer.newLine();
+                for (Segment segment : segments) {
+                    writer.write(segment.start + "," + segment.end + "," + segment.position);
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, segmentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            download.segmentLock.unlock();
+        }
+    }
+
+    /**
+     * Downloads a small resource into memory. When an HTTP cache is set the body is kept in
+     * the cache, and later calls only transfer it again if it has changed on the server.
+     *
+     * @param url The URL to download from.
+     * @return The body of the response.
+     * @throws RuntimeException if the download fails.
+     */
     public static String downloadSmallData(URL url) {
+        HttpCache cache = httpCache;
         try {
-            HttpURLConnection connection = setupConnection(url, "GET", null);
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                try (InputStream inputStream = connection.getInputStream()) {
-                    return new String(inputStream.readAllBytes());
+            Path bodyFile = cache == null ? null : cache.bodyFile(url);
+            Map<String, String> headers = cache == null ? Map.of() : cache.conditionalHeaders(url, bodyFile);
+            try (HttpTransport.Response connection = transport.request(url, "GET", headers, true)) {
+                int responseCode = connection.getStatusCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && bodyFile != null) {
+                    return new String(Files.readAllBytes(bodyFile));
+                } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                    byte[] body;
+                    try (InputStream inputStream = connection.getBody()) {
+                        body = inputStream.readAllBytes();
+                    }
+                    if (cache != null) {
+                        Files.createDirectories(bodyFile.getParent());
+                        Path tempFile = bodyFile.resolveSibling(bodyFile.getFileName() + ".tmp");
+                        Files.write(tempFile, body);
+                        Files.move(tempFile, bodyFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                        cache.store(url, connection, bodyFile, null);
+                    }
+                    return new String(body);
+                } else {
+                    throw new IOException("Failed to download data, HTTP response code: " + responseCode);
                 }
-            } else {
-                throw new IOException("Failed to download data, HTTP response code: " + responseCode);
             }
         } catch (SocketTimeoutException e) {
             throw new RuntimeException("Timeout while downloading data: " + url, e);
@@ -254,12 +1023,13 @@ public class DownloadHelper {
      */
     public static long queryUrlFileDownloadSize(URL url) {
         try {
-            HttpURLConnection connection = setupConnection(url, "HEAD", null);
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL) {
-                return connection.getContentLengthLong();
+            try (HttpTransport.Response connection = setupConnection(url, "HEAD", null)) {
+                int responseCode = connection.getStatusCode();
+                if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                    return connection.getContentLength();
+                }
+                throw new IOException("Failed to query file size, HTTP response code: " + responseCode);
             }
-            throw new IOException("Failed to query file size, HTTP response code: " + responseCode);
         } catch (SocketTimeoutException e) {
             throw new RuntimeException("Timeout while querying file size: " + url, e);
         } catch (IOException e) {
@@ -278,12 +1048,13 @@ public class DownloadHelper {
     public static long queryUrlPartialDownloadSize(URL url, long startByte) {
         try {
             String range = "bytes=" + startByte + "-";
-            HttpURLConnection connection = setupConnection(url, "GET", range);
-            int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL) {
-                return connection.getContentLengthLong();
+            try (HttpTransport.Response connection = setupConnection(url, "GET", range)) {
+                int responseCode = connection.getStatusCode();
+                if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL) {
+                    return connection.getContentLength();
+                }
+                throw new IOException("Failed to query partial file size, HTTP response code: " + responseCode);
             }
-            throw new IOException("Failed to query partial file size, HTTP response code: " + responseCode);
         } catch (SocketTimeoutException e) {
             throw new RuntimeException("Timeout while querying partial file size: " + url, e);
         } catch (IOException e) {
@@ -310,29 +1081,28 @@ public class DownloadHelper {
         }
     }
 
-    public static HttpURLConnection followRedirects(URL url) throws IOException {
+    public static HttpTransport.Response followRedirects(URL url) throws IOException {
         Set<String> visitedUrls = new HashSet<>(); // Track visited URLs to prevent circular redirects
         int maxRedirects = 8;
         int redirectCount = 0;
 
         while (true) {
-            HttpURLConnection connection = setupConnection(url, "HEAD", null);
-            connection.setInstanceFollowRedirects(false); // Disable automatic redirect following
-            int responseCode = connection.getResponseCode();
+            HttpTransport.Response connection = setupConnection(url, "HEAD", null, false);
+            int responseCode = connection.getStatusCode();
 
             if (!isRedirect(responseCode)) {
                 return connection;
             } else {
                 redirectCount++;
                 if (redirectCount > maxRedirects) {
-                    connection.disconnect(); // Close the current connection
+                    connection.close(); // Close the current connection
                     throw new IOException("Maximum redirect limit (" + maxRedirects + ") exceeded for URL: " + url);
                 }
 
                 // Get the redirect location
-                String location = connection.getHeaderField("Location");
+                String location = connection.getHeader("Location");
                 if (location == null || location.isEmpty()) {
-                    connection.disconnect(); // Close the current connection
+                    connection.close(); // Close the current connection
                     throw new IOException("Redirect response code " + responseCode + " but no Location header found for URL: " + url);
                 }
 
@@ -342,11 +1112,11 @@ public class DownloadHelper {
                 // Check for circular redirects
                 String urlString = url.toString();
                 if (!visitedUrls.add(urlString)) {
-                    connection.disconnect(); // Close the current connection
+                    connection.close(); // Close the current connection
                     throw new IOException("Circular redirect detected for URL: " + urlString);
                 }
 
-                connection.disconnect(); // Close the current connection
+                connection.close(); // Close the current connection
             }
         }
     }
@@ -364,29 +1134,32 @@ public class DownloadHelper {
                     throw new IOException("Circular redirect detected for URL: " + urlString);
                 }
 
-                HttpURLConnection connection = setupConnection(url, "HEAD", null);
-                connection.setInstanceFollowRedirects(false); // Disable automatic redirect following
-                int responseCode = connection.getResponseCode();
+                HttpTransport.Response connection = setupConnection(url, "HEAD", null, false);
+                int responseCode = connection.getStatusCode();
 
                 if (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL) {
-                    return connection.getContentLengthLong();
+                    long size = connection.getContentLength();
+                    connection.close();
+                    return size;
                 } else if (isRedirect(responseCode)) {
+                    // Get the redirect location
+                    String location = connection.getHeader("Location");
+                    connection.close(); // Close the current connection
+
                     redirectCount++;
                     if (redirectCount > maxRedirects) {
                         throw new IOException("Maximum redirect limit (" + maxRedirects + ") exceeded for URL: " + url);
                     }
 
-                    // Get the redirect location
-                    String location = connection.getHeaderField("Location");
                     if (location == null || location.isEmpty()) {
                         throw new IOException("Redirect response code " + responseCode + " but no Location header found for URL: " + url);
                     }
 
                     // Resolve the new URL relative to the current URL
                     url = new URL(url, location);
-                    connection.disconnect(); // Close the current connection
                     continue; // Follow the redirect
                 } else {
+                    connection.close();
                     throw new IOException("Failed to query file size, HTTP response code: " + responseCode + " for URL: " + url);
                 }
             }
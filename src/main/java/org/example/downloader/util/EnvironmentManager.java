@@ -20,6 +20,7 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -31,6 +32,7 @@ public class EnvironmentManager {
 
     protected final Path configPath;
     protected final Properties properties = new Properties();
+    private FileTime loadedModifiedTime = null;
 
     public EnvironmentManager(Path configFilePath) {
         this.configPath = configFilePath;
@@ -44,6 +46,7 @@ public class EnvironmentManager {
             try (InputStream in = Files.newInputStream(configPath)) {
                 properties.load(in);
             }
+            loadedModifiedTime = Files.getLastModifiedTime(configPath);
         } catch (IOException e) {
             throw new RuntimeException("Failed to load Java download environment properties", e);
         }
@@ -138,6 +141,7 @@ public class EnvironmentManager {
         try (OutputStream out = Files.newOutputStream(configPath)) {
             properties.store(out, "Debian Downloader Configuration");
         }
+        loadedModifiedTime = Files.getLastModifiedTime(configPath);
     }
 
     public void reload() throws IOException {
@@ -146,9 +150,25 @@ public class EnvironmentManager {
             try (InputStream in = Files.newInputStream(configPath)) {
                 properties.load(in);
             }
+            loadedModifiedTime = Files.getLastModifiedTime(configPath);
         }
     }
 
+    /**
+     * Reloads the configuration if the file has been modified since it was last loaded or saved,
+     * so that settings edited by hand are picked up by a running program.
+     *
+     * @return true if the configuration was reloaded, false otherwise.
+     * @throws IOException if the file can not be read.
+     */
+    public boolean reloadIfModified() throws IOException {
+        if (!Files.exists(configPath) || Files.getLastModifiedTime(configPath).equals(loadedModifiedTime)) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
     public Properties getProperties() {
         return properties;
     }
@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * How a {@link WorkerExecutor} runs its workers. The platform mode runs them on a pool of
+ * platform threads, one per concurrent worker. The virtual mode starts a virtual thread for
+ * every worker, so that a worker blocked on a socket read costs no platform thread and
+ * thousands of small downloads can be in flight at once. Virtual threads need Java 21, they
+ * are looked up at runtime so that the same build runs on Java 11 in the platform mode.
+ */
+public enum ExecutionMode {
+    PLATFORM("platform"),
+    VIRTUAL("virtual");
+
+    // More platform threads than this cost more in memory and scheduling than they gain
+    public static final int MAX_PLATFORM_THREADS = 256;
+
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+    private final String name;
+
+    ExecutionMode(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static ExecutionMode fromString(String name) {
+        for (ExecutionMode mode : values()) {
+            if (mode.name.equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown execution mode: " + name);
+    }
+
+    public static List<String> toStringList() {
+        List<String> names = new ArrayList<>();
+        for (ExecutionMode mode : values()) {
+            names.add(mode.name);
+        }
+        return names;
+    }
+
+    /**
+     * Gets the names of the modes the running Java supports.
+     *
+     * @return The names of the available modes.
+     */
+    public static List<String> toAvailableStringList() {
+        List<String> names = new ArrayList<>();
+        for (ExecutionMode mode : values()) {
+            if (mode.isAvailable()) {
+                names.add(mode.name);
+            }
+        }
+        return names;
+    }
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the running Java supports the mode.
+     *
+     * @return true if the mode can be used, false otherwise.
+     */
+    public boolean isAvailable() {
+        return this != VIRTUAL || NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Creates the executor service workers run on. The virtual mode falls back to the
+     * platform mode on a Java without virtual threads.
+     *
+     * @param threads The number of workers that may run at once.
+     * @param logger  Logs the fallback.
+     * @return The executor service.
+     */
+    public ExecutorService createExecutorService(int threads, Logger logger) {
+        if (this == VIRTUAL) {
+            if (isAvailable()) {
+                try {
+                    return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    throw new RuntimeException("Failed to create virtual thread executor", e);
+                }
+            }
+            logger.warning("Virtual threads need Java 21 or later, running workers on platform threads.");
+        }
+        return Executors.newFixedThreadPool(Math.min(threads, MAX_PLATFORM_THREADS));
+    }
+
+    /**
+     * Gets how many workers the mode can run at once.
+     *
+     * @param threads The number of workers asked for.
+     * @return The number of workers, capped for platform threads.
+     */
+    public int capConcurrency(int threads) {
+        return this == VIRTUAL && isAvailable() ? threads : Math.min(threads, MAX_PLATFORM_THREADS);
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Remembers the ETag and Last-Modified validators of downloaded URLs, so that a later
+ * request can be made conditional and an unchanged resource is answered with 304 Not
+ * Modified instead of being sent again. The validators are kept in an index file in the
+ * cache directory for every pair of URL and local copy, so that the same URL fetched into
+ * two places, such as a small response kept in the cache and a download of the same URL,
+ * never shares validators. The size and modification time of the local copy are kept as
+ * well, a local file that has changed since is never revalidated. The SHA-256 digest of the
+ * local copy can be kept too, so that a copy confirmed unchanged does not have to be hashed
+ * again. Small responses can keep their body in the cache directory.
+ */
+public class HttpCache {
+
+    private static final String INDEX_FILE = "index.properties";
+    private static final String BODY_SUFFIX = ".body";
+
+    private static final String ETAG = ".etag";
+    private static final String LAST_MODIFIED = ".last_modified";
+    private static final String SIZE = ".size";
+    private static final String MODIFIED = ".mtime";
+    private static final String SHA256 = ".sha256";
+    private static final String SOURCE = ".url";
+    private static final String FILE = ".file";
+
+    private final Path cacheDir;
+    private final Properties index = new Properties();
+
+    public HttpCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+        Path indexFile = cacheDir.resolve(INDEX_FILE);
+        try {
+            if (Files.exists(indexFile)) {
+                try (InputStream in = Files.newInputStream(indexFile)) {
+                    index.load(in);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load HTTP cache index", e);
+        }
+    }
+
+    private static String key(URL url) {
+        return DigestHelper.sha256Hex(url.toString());
+    }
+
+    private static String key(URL url, Path file) {
+        return DigestHelper.sha256Hex(url.toString() + '\n' + file.toAbsolutePath().normalize());
+    }
+
+    private static String modified(Path file) throws IOException {
+        return Long.toString(Files.getLastModifiedTime(file).toMillis());
+    }
+
+    /**
+     * Gets the file in the cache directory where the body of a small response is kept.
+     *
+     * @param url The URL of the response.
+     * @return The path of the cached body.
+     */
+    public Path bodyFile(URL url) {
+        return cacheDir.resolve(key(url) + BODY_SUFFIX);
+    }
+
+    /**
+     * Builds the headers that make a request for the URL conditional on the local copy.
+     *
+     * @param url  The URL to request.
+     * @param file The local copy of the resource.
+     * @return If-None-Match and If-Modified-Since headers, or no headers if the local copy
+     * is missing or has changed since the validators were stored for it.
+     * @throws IOException if the size of the local copy can not be read.
+     */
+    public synchronized Map<String, String> conditionalHeaders(URL url, Path file) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        String key = key(url, file);
+        String size = index.getProperty(key + SIZE);
+        String modified = index.getProperty(key + MODIFIED);
+        if (size == null || modified == null || !Files.exists(file)
+                || !size.equals(Long.toString(Files.size(file))) || !modified.equals(modified(file))) {
+            return headers;
+        }
+        String etag = index.getProperty(key + ETAG);
+        if (etag != null) {
+            headers.put("If-None-Match", etag);
+        }
+        String lastModified = index.getProperty(key + LAST_MODIFIED);
+        if (lastModified != null) {
+            headers.put("If-Modified-Since", lastModified);
+        }
+        return headers;
+    }
+
+    /**
+     * Gets the digest stored together with the validators of the URL and local copy.
+     *
+     * @param url  The URL of the resource.
+     * @param file The local copy of the resource.
+     * @return The SHA-256 digest of the local copy, or null if none is stored.
+     */
+    public synchronized String getSha256(URL url, Path file) {
+        return index.getProperty(key(url, file) + SHA256);
+    }
+
+    /**
+     * Stores the validators of a response whose body has been saved to the given file.
+     * A response without validators removes any previous entry for the URL and file.
+     *
+     * @param url      The URL of the response.
+     * @param response The response.
+     * @param file     The local copy holding the body of the response.
+     * @param sha256   The SHA-256 digest of the local copy, or null if not known.
+     * @throws IOException if the index can not be written.
+     */
+    public synchronized void store(URL url, HttpTransport.Response response, Path file, String sha256) throws IOException {
+        String key = key(url, file);
+        String etag = response.getHeader("ETag");
+        String lastModified = response.getHeader("Last-Modified");
+        index.remove(key + ETAG);
+        index.remove(key + LAST_MODIFIED);
+        index.remove(key + SIZE);
+        index.remove(key + MODIFIED);
+        index.remove(key + SHA256);
+        index.remove(key + SOURCE);
+        index.remove(key + FILE);
+        if (etag != null || lastModified != null) {
+            index.setProperty(key + SOURCE, url.toString());
+            index.setProperty(key + FILE, file.toAbsolutePath().normalize().toString());
+            index.setProperty(key + SIZE, Long.toString(Files.size(file)));
+            index.setProperty(key + MODIFIED, modified(file));
+            if (etag != null) {
+                index.setProperty(key + ETAG, etag);
+            }
+            if (lastModified != null) {
+                index.setProperty(key + LAST_MODIFIED, lastModified);
+            }
+            if (sha256 != null) {
+                index.setProperty(key + SHA256, sha256);
+            }
+        }
+        save();
+    }
+
+    private void save() throws IOException {
+        Files.createDirectories(cacheDir);
+        Path indexFile = cacheDir.resolve(INDEX_FILE);
+        Path tempFile = cacheDir.resolve(INDEX_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            index.store(out, "HTTP cache validators");
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transport engine used by {@link DownloadHelper} to talk HTTP. Engines differ in how they
+ * manage connections, the pooled engine keeps connections to every mirror host open between
+ * requests while the legacy engine opens a new connection for each request.
+ */
+public interface HttpTransport {
+
+    int CONNECT_TIMEOUT = 10000;
+    int READ_TIMEOUT = 30000;
+
+    /**
+     * Sends a request and returns the response once the status line and headers have arrived.
+     * Timeouts are reported as {@link java.net.SocketTimeoutException}.
+     *
+     * @param url             The URL to request.
+     * @param method          The HTTP method, GET or HEAD.
+     * @param headers         Extra request headers, may be empty.
+     * @param followRedirects Whether redirects should be followed by the engine.
+     * @return The response, which must be closed by the caller.
+     * @throws IOException if the request fails.
+     */
+    Response request(URL url, String method, Map<String, String> headers, boolean followRedirects) throws IOException;
+
+    /**
+     * Releases connections and threads held by the engine.
+     */
+    void close();
+
+    /**
+     * A response of an HTTP request. Closing the response releases the connection.
+     */
+    interface Response extends Closeable {
+        int getStatusCode();
+
+        /**
+         * @return The value of the Content-Length header or -1 if unknown.
+         */
+        long getContentLength();
+
+        /**
+         * @param name The case-insensitive name of the header.
+         * @return The first value of the header or null if absent.
+         */
+        String getHeader(String name);
+
+        InputStream getBody() throws IOException;
+
+        @Override
+        void close();
+    }
+
+    enum Engine {
+        POOLED("pooled"),
+        LEGACY("legacy");
+
+        private final String name;
+
+        Engine(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static Engine fromString(String name) {
+            for (Engine engine : values()) {
+                if (engine.name.equalsIgnoreCase(name.trim())) {
+                    return engine;
+                }
+            }
+            throw new IllegalArgumentException("Unknown HTTP transport: " + name);
+        }
+
+        public static List<String> toStringList() {
+            List<String> names = new ArrayList<>();
+            for (Engine engine : values()) {
+                names.add(engine.name);
+            }
+            return names;
+        }
+
+        public HttpTransport create() {
+            switch (this) {
+                case LEGACY:
+                    return new UrlConnectionTransport();
+                case POOLED:
+                default:
+                    return new PooledHttpClientTransport();
+            }
+        }
+    }
+}
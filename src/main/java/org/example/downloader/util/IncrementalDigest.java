@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SHA-256 digest that is fed with the bytes of a file while they are written, so that
+ * the digest is ready as soon as the last byte has landed. The digest always covers the
+ * file from the first byte up to the current position. The digests of the pieces of a file
+ * large enough to get a piece manifest are computed from the same bytes, smaller files and
+ * files of unknown size are only hashed once. Other digests the file is published with, such
+ * as SHA-512, can be fed the same bytes, so checking them takes no read of the file.
+ */
+public class IncrementalDigest {
+
+    private final MessageDigest sha256;
+    private long position = 0;
+    private String hexDigest = null;
+
+    // Null when the pieces are not hashed
+    private final MessageDigest pieceSha256;
+    private final List<String> pieces = new ArrayList<>();
+    private int piecePosition = 0;
+
+    // Digests besides SHA-256 by algorithm, and their results once finished
+    private final Map<String, MessageDigest> others = new LinkedHashMap<>();
+    private final Map<String, String> hexDigests = new LinkedHashMap<>();
+
+    /**
+     * Creates a digest of a file of unknown size, its pieces are not hashed.
+     */
+    public IncrementalDigest() {
+        this(-1);
+    }
+
+    /**
+     * @param expectedSize The size the file is expected to have, the pieces are only hashed
+     *                     when it spans more than one piece. Negative if unknown.
+     */
+    public IncrementalDigest(long expectedSize) {
+        this(expectedSize, Collections.emptySet());
+    }
+
+    /**
+     * @param expectedSize The size the file is expected to have, the pieces are only hashed
+     *                     when it spans more than one piece. Negative if unknown.
+     * @param algorithms   The digests to compute besides SHA-256, such as "SHA-512".
+     */
+    public IncrementalDigest(long expectedSize, Collection<String> algorithms) {
+        this.sha256 = DigestHelper.newSha256();
+        this.pieceSha256 = expectedSize > PieceManifest.PIECE_SIZE ? DigestHelper.newSha256() : null;
+        for (String algorithm : algorithms) {
+            if (!algorithm.equals(MultiDigestVerifier.SHA256)) {
+                others.put(algorithm, MultiDigestVerifier.newDigest(algorithm));
+            }
+        }
+    }
+
+    private void finishPiece() {
+        pieces.add(Sha256Helper.bytesToHex(pieceSha256.digest()));
+        piecePosition = 0;
+    }
+
+    /**
+     * Returns how many bytes from the start of the file the digest covers.
+     *
+     * @return the number of bytes hashed so far
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Feeds the digest with the bytes following the current position.
+     *
+     * @param buffer the data
+     * @param offset the offset in the buffer
+     * @param length the number of bytes
+     */
+    public void update(byte[] buffer, int offset, int length) {
+        if (hexDigest != null) {
+            throw new IllegalStateException("Digest already finished");
+        }
+        sha256.update(buffer, offset, length);
+        for (MessageDigest other : others.values()) {
+            other.update(buffer, offset, length);
+        }
+        position += length;
+        while (pieceSha256 != null && length > 0) {
+            int part = Math.min(length, PieceManifest.PIECE_SIZE - piecePosition);
+            pieceSha256.update(buffer, offset, part);
+            offset += part;
+            length -= part;
+            piecePosition += part;
+            if (piecePosition == PieceManifest.PIECE_SIZE) {
+                finishPiece();
+            }
+        }
+    }
+
+    /**
+     * Feeds the digest with the remaining bytes of the buffer, which follow the current position.
+     * The buffer is consumed.
+     *
+     * @param buffer the data
+     */
+    public void update(ByteBuffer buffer) {
+        if (hexDigest != null) {
+            throw new IllegalStateException("Digest already finished");
+        }
+        position += buffer.remaining();
+        for (MessageDigest other : others.values()) {
+            other.update(buffer.duplicate());
+        }
+        ByteBuffer rest = buffer.duplicate();
+        while (pieceSha256 != null && rest.hasRemaining()) {
+            int part = Math.min(rest.remaining(), PieceManifest.PIECE_SIZE - piecePosition);
+            ByteBuffer slice = rest.duplicate();
+            slice.limit(slice.position() + part);
+            pieceSha256.update(slice);
+            rest.position(rest.position() + part);
+            piecePosition += part;
+            if (piecePosition == PieceManifest.PIECE_SIZE) {
+                finishPiece();
+            }
+        }
+        sha256.update(buffer);
+    }
+
+    /**
+     * Hashes bytes that are already on disk, from the current position up to the given
+     * offset. Used for the prefix of a resumed download and for ranges written out of order.
+     *
+     * @param filePath the file being downloaded
+     * @param upTo     the offset to hash up to, exclusive
+     * @throws IOException if the file can not be read
+     */
+    public void catchUp(Path filePath, long upTo) throws IOException {
+        if (upTo <= position) {
+            return;
+        }
+        try (InputStream inputStream = Files.newInputStream(filePath)) {
+            long skip = position;
+            while (skip > 0) {
+                long skipped = inputStream.skip(skip);
+                if (skipped <= 0) {
+                    throw new IOException("Unable to skip to offset " + position + " in " + filePath);
+                }
+                skip -= skipped;
+            }
+            byte[] buffer = new byte[Sha256Helper.BUFFER_SIZE];
+            while (position < upTo) {
+                int bytesRead = inputStream.read(buffer, 0, (int) Math.min(buffer.length, upTo - position));
+                if (bytesRead == -1) {
+                    throw new IOException("Unexpected end of file at offset " + position + " in " + filePath);
+                }
+                update(buffer, 0, bytesRead);
+            }
+        }
+    }
+
+    /**
+     * Finishes the digest and returns it as a lowercase hexadecimal string.
+     * Once finished the digest can not be fed any more data.
+     *
+     * @return the SHA-256 digest of the bytes fed so far
+     */
+    public String finish() {
+        if (hexDigest == null) {
+            hexDigest = Sha256Helper.bytesToHex(sha256.digest());
+            hexDigests.put(MultiDigestVerifier.SHA256, hexDigest);
+            others.forEach((algorithm, other) -> hexDigests.put(algorithm, DigestHelper.toHex(other.digest())));
+            if (piecePosition > 0) {
+                finishPiece();
+            }
+        }
+        return hexDigest;
+    }
+
+    /**
+     * Gets all the digests of the bytes fed, finishing the digest.
+     *
+     * @return the SHA-256 digest and the other digests as lowercase hexadecimal, keyed by algorithm
+     */
+    public Map<String, String> getDigests() {
+        finish();
+        return Collections.unmodifiableMap(hexDigests);
+    }
+
+    /**
+     * Gets the piece manifest of the bytes fed, finishing the digest.
+     *
+     * @return the manifest of the file from the first byte up to the current position, null
+     * if the pieces were not hashed
+     */
+    public PieceManifest getPieceManifest() {
+        finish();
+        if (pieceSha256 == null) {
+            return null;
+        }
+        return new PieceManifest(PieceManifest.PIECE_SIZE, position, pieces);
+    }
+}
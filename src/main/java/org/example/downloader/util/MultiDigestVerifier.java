@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Verifies a file against several digests at once, such as the MD5, SHA-1, SHA-256 and
+ * SHA-512 digests an artifact is published with. Every chunk of the file is read once and
+ * fed to all the digests, so each extra digest costs hashing but no extra read of the file.
+ * A digest already known, such as one computed while downloading, is supplied instead of
+ * computed again, and a supplied digest that does not match fails the
+ * verification without reading the file at all.
+ */
+public class MultiDigestVerifier {
+
+    public static final String MD5 = "MD5";
+    public static final String SHA1 = "SHA-1";
+    public static final String SHA256 = "SHA-256";
+    public static final String SHA512 = "SHA-512";
+
+    private final Path filePath;
+    private final Map<String, String> expected = new LinkedHashMap<>();
+    private final Map<String, String> computed = new LinkedHashMap<>();
+
+    public MultiDigestVerifier(Path filePath) {
+        this.filePath = filePath;
+    }
+
+    /**
+     * @param filePath The file to verify.
+     * @param digests  The expected digests keyed by algorithm, blank digests are left out.
+     */
+    public MultiDigestVerifier(Path filePath, Map<String, String> digests) {
+        this(filePath);
+        digests.forEach(this::expect);
+    }
+
+    /**
+     * Adds a digest the file must match.
+     *
+     * @param algorithm The name of the digest algorithm, such as "SHA-512".
+     * @param hexDigest The expected digest as hexadecimal, in either case. Null or blank is ignored.
+     * @return This verifier.
+     */
+    public MultiDigestVerifier expect(String algorithm, String hexDigest) {
+        if (hexDigest != null && !hexDigest.isBlank()) {
+            expected.put(algorithm, hexDigest.trim());
+        }
+        return this;
+    }
+
+    /**
+     * Supplies a digest of the file that is already known, it is not computed again.
+     *
+     * @param algorithm The name of the digest algorithm.
+     * @param hexDigest The digest of the file as hexadecimal.
+     * @return This verifier.
+     */
+    public MultiDigestVerifier supply(String algorithm, String hexDigest) {
+        if (hexDigest != null) {
+            computed.put(algorithm, hexDigest);
+        }
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return expected.isEmpty();
+    }
+
+    /**
+     * Computes the expected digests that are not yet known in one read of the file and
+     * compares them all.
+     *
+     * @return true if the file matches every expected digest.
+     * @throws IOException if the file can not be read.
+     */
+    public boolean verify() throws IOException {
+        for (String algorithm : expected.keySet()) {
+            if (computed.containsKey(algorithm) && !matches(algorithm)) {
+                return false;
+            }
+        }
+        List<String> algorithms = new ArrayList<>();
+        List<MessageDigest> digests = new ArrayList<>();
+        for (String algorithm : expected.keySet()) {
+            if (!computed.containsKey(algorithm)) {
+                algorithms.add(algorithm);
+                digests.add(newDigest(algorithm));
+            }
+        }
+        if (!digests.isEmpty()) {
+            hash(digests);
+            for (int i = 0; i < digests.size(); i++) {
+                computed.put(algorithms.get(i), DigestHelper.toHex(digests.get(i).digest()));
+            }
+        }
+        return getMismatches().isEmpty();
+    }
+
+    private void hash(List<MessageDigest> digests) throws IOException {
+        ByteBuffer wrapped = Sha256Helper.READ_BUFFERS.acquire();
+        byte[] buffer = wrapped.array();
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            int bytesRead;
+            while ((bytesRead = channel.read(wrapped.clear())) != -1) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, bytesRead);
+                }
+            }
+        } finally {
+            Sha256Helper.READ_BUFFERS.release(wrapped);
+        }
+    }
+
+    static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(algorithm + " hash algorithm not available!", e);
+        }
+    }
+
+    /**
+     * @param algorithm The name of the digest algorithm.
+     * @return true if the digest was computed or supplied and matches the expected one.
+     */
+    public boolean matches(String algorithm) {
+        String digest = computed.get(algorithm);
+        return digest != null && digest.equalsIgnoreCase(expected.get(algorithm));
+    }
+
+    /**
+     * @param algorithm The name of the digest algorithm.
+     * @return The digest of the file as lowercase hexadecimal, null if it is not known.
+     */
+    public String getComputed(String algorithm) {
+        return computed.get(algorithm);
+    }
+
+    public String getExpected(String algorithm) {
+        return expected.get(algorithm);
+    }
+
+    /**
+     * @return The algorithms of the expected digests the file does not match.
+     */
+    public List<String> getMismatches() {
+        List<String> mismatches = new ArrayList<>();
+        for (String algorithm : expected.keySet()) {
+            if (!matches(algorithm)) {
+                mismatches.add(algorithm);
+            }
+        }
+        return mismatches;
+    }
+}
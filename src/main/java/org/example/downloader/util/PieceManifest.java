@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The SHA-256 digests of the fixed size pieces of a file that has passed verification. A
+ * single digest over the whole file can only say that the file is damaged, the pieces say
+ * where, so a damaged file can be repaired by fetching only the bad pieces again. The pieces
+ * can also be checked in parallel, which spreads the verification of one large file over
+ * several cores. The manifest file holds the piece size and the file size on the first line,
+ * followed by the digest of every piece on a line of its own.
+ */
+public class PieceManifest {
+
+    public static final int PIECE_SIZE = 4 * 1024 * 1024;
+    private static final String MANIFEST_SUFFIX = ".pieces";
+
+    private final int pieceSize;
+    private final long totalSize;
+    private final List<String> pieces;
+
+    PieceManifest(int pieceSize, long totalSize, List<String> pieces) {
+        this.pieceSize = pieceSize;
+        this.totalSize = totalSize;
+        this.pieces = pieces;
+    }
+
+    /**
+     * Gets the file the manifest of an artifact is kept in.
+     *
+     * @param manifestDir The directory of the manifests.
+     * @param digest      The SHA-256 digest of the artifact.
+     * @return The path of the manifest file.
+     */
+    public static Path manifestFile(Path manifestDir, String digest) {
+        return manifestDir.resolve(digest.toLowerCase() + MANIFEST_SUFFIX);
+    }
+
+    /**
+     * Loads a manifest.
+     *
+     * @param manifestFile The manifest file.
+     * @return The manifest, or null if the file is missing, unreadable or malformed.
+     */
+    public static PieceManifest load(Path manifestFile) {
+        try {
+            if (!Files.exists(manifestFile)) {
+                return null;
+            }
+            List<String> lines = Files.readAllLines(manifestFile, StandardCharsets.UTF_8);
+            if (lines.isEmpty()) {
+                return null;
+            }
+            String[] header = lines.get(0).trim().split(" ");
+            int pieceSize = Integer.parseInt(header[0]);
+            long totalSize = Long.parseLong(header[1]);
+            List<String> pieces = new ArrayList<>();
+            for (String line : lines.subList(1, lines.size())) {
+                if (!line.trim().isEmpty()) {
+                    pieces.add(line.trim());
+                }
+            }
+            if (pieceSize <= 0 || pieces.size() != (totalSize + pieceSize - 1) / pieceSize) {
+                return null;
+            }
+            return new PieceManifest(pieceSize, totalSize, pieces);
+        } catch (IOException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the manifest, replacing a previous manifest atomically.
+     *
+     * @param manifestFile The manifest file.
+     * @throws IOException if the manifest can not be written.
+     */
+    public void save(Path manifestFile) throws IOException {
+        Files.createDirectories(manifestFile.getParent());
+        Path tempFile = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            writer.write(pieceSize + " " + totalSize);
+            writer.newLine();
+            for (String piece : pieces) {
+                writer.write(piece);
+                writer.newLine();
+            }
+        }
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public int getPieceCount() {
+        return pieces.size();
+    }
+
+    /**
+     * Checks every piece of the file against the manifest.
+     *
+     * @param file     The file, it must have the size of the manifest.
+     * @param progress Called with the number of bytes of every piece checked.
+     * @return true if all pieces match.
+     * @throws IOException if the file can not be read.
+     */
+    public boolean verify(Path file, LongConsumer progress) throws IOException {
+        for (boolean match : check(file, progress)) {
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the ranges of the file that do not match the manifest, adjacent bad pieces are
+     * joined into one range.
+     *
+     * @param file The file, it must have the size of the manifest.
+     * @return The damaged ranges, empty if the file is intact.
+     * @throws IOException if the file can not be read.
+     */
+    List<DownloadHelper.Segment> findDamaged(Path file) throws IOException {
+        boolean[] matches = check(file, bytes -> {});
+        List<DownloadHelper.Segment> damaged = new ArrayList<>();
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i]) {
+                continue;
+            }
+            long start = pieceStart(i);
+            long end = pieceStart(i) + pieceLength(i);
+            DownloadHelper.Segment last = damaged.isEmpty() ? null : damaged.get(damaged.size() - 1);
+            if (last != null && last.end == start) {
+                damaged.set(damaged.size() - 1, new DownloadHelper.Segment(last.start, end, last.start));
+            } else {
+                damaged.add(new DownloadHelper.Segment(start, end, start));
+            }
+        }
+        return damaged;
+    }
+
+    private long pieceStart(int piece) {
+        return (long) piece * pieceSize;
+    }
+
+    private int pieceLength(int piece) {
+        return (int) Math.min(pieceSize, totalSize - pieceStart(piece));
+    }
+
+    /**
+     * Hashes the pieces of the file, in parallel unless the file is on a rotational disk
+     * where reading several pieces at once would only make it seek.
+     */
+    private boolean[] check(Path file, LongConsumer progress) throws IOException {
+        if (Files.size(file) != totalSize) {
+            throw new IOException("Size of " + file + " does not match its piece manifest");
+        }
+        boolean[] matches = new boolean[pieces.size()];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            IntStream indexes = IntStream.range(0, pieces.size());
+            if (StorageType.detect(file) != StorageType.ROTATIONAL) {
+                indexes = indexes.parallel();
+            }
+            indexes.forEach(piece -> {
+                try {
+                    matches[piece] = hashPiece(channel, piece).equals(pieces.get(piece));
+                    progress.accept(pieceLength(piece));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return matches;
+    }
+
+    private String hashPiece(FileChannel channel, int piece) throws IOException {
+        MessageDigest sha256 = DigestHelper.sha256();
+        ByteBuffer buffer = Sha256Helper.READ_BUFFERS.acquire();
+        try {
+            long position = pieceStart(piece);
+            long end = position + pieceLength(piece);
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                int bytesRead = channel.read(buffer, position);
+                if (bytesRead == -1) {
+                    throw new IOException("Unexpected end of file at offset " + position);
+                }
+                buffer.flip();
+                sha256.update(buffer);
+                position += bytesRead;
+            }
+        } finally {
+            Sha256Helper.READ_BUFFERS.release(buffer);
+        }
+        return DigestHelper.finishHex(sha256);
+    }
+}
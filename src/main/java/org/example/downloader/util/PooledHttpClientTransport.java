@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport engine built on {@link HttpClient}. A single client is shared by all workers and
+ * keeps its connections to every mirror host pooled as HTTP/1.1 keep-alive connections.
+ * HTTP/2 is not used, it would multiplex the segments of a download over one connection and
+ * a segmented download is meant to use several.
+ *
+ * The request timeout covers the wait for the response headers, the body is read with the
+ * same timeout per read as the URLConnection engine. A read that has not returned in time
+ * has its body closed, which ends the read with a SocketTimeoutException.
+ */
+public class PooledHttpClientTransport implements HttpTransport {
+
+    private static final int MAX_REDIRECTS = 8;
+
+    private static final Set<TimedBody> bodies = ConcurrentHashMap.newKeySet();
+    private static ScheduledExecutorService readWatchdog = null;
+
+    private final HttpClient client;
+
+    public PooledHttpClientTransport() {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT))
+                .build();
+    }
+
+    @Override
+    public Response request(URL url, String method, Map<String, String> headers, boolean followRedirects) throws IOException {
+        int redirectCount = 0;
+        while (true) {
+            HttpResponse<InputStream> response = send(url, method, headers);
+            int statusCode = response.statusCode();
+            String location = response.headers().firstValue("Location").orElse(null);
+
+            if (!followRedirects || !isRedirect(statusCode) || location == null || location.isEmpty()) {
+                return new ClientResponse(response);
+            }
+
+            response.body().close();
+            redirectCount++;
+            if (redirectCount > MAX_REDIRECTS) {
+                throw new IOException("Maximum redirect limit (" + MAX_REDIRECTS + ") exceeded for URL: " + url);
+            }
+            url = new URL(url, location);
+        }
+    }
+
+    private HttpResponse<InputStream> send(URL url, String method, Map<String, String> headers) throws IOException {
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(url.toURI())
+                    .timeout(Duration.ofMillis(READ_TIMEOUT))
+                    .method(method, HttpRequest.BodyPublishers.noBody());
+            headers.forEach(builder::header);
+            return client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (HttpTimeoutException e) {
+            throw new SocketTimeoutException("Timeout requesting " + url + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted requesting " + url);
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new MalformedURLException("Invalid URL " + url + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isRedirect(int responseCode) {
+        return responseCode == 301 || responseCode == 302 || responseCode == 303 || responseCode == 307 || responseCode == 308;
+    }
+
+    @Override
+    public void close() {
+        // Pooled connections are closed by the client when idle
+    }
+
+    private static synchronized void watch(TimedBody body) {
+        if (readWatchdog == null) {
+            readWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "http-read-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            readWatchdog.scheduleWithFixedDelay(PooledHttpClientTransport::checkReads, 1, 1, TimeUnit.SECONDS);
+        }
+        bodies.add(body);
+    }
+
+    private static void checkReads() {
+        long now = System.nanoTime();
+        for (TimedBody body : bodies) {
+            long since = body.readingSince;
+            if (since != 0 && now - since > TimeUnit.MILLISECONDS.toNanos(READ_TIMEOUT)) {
+                body.timedOut = true;
+                try {
+                    body.close();
+                } catch (IOException e) {
+                    // The read ends either way
+                }
+            }
+        }
+    }
+
+    /**
+     * A response body whose reads time out, the watchdog closes it when a read blocks too long.
+     */
+    private static class TimedBody extends FilterInputStream {
+        private volatile long readingSince = 0;
+        private volatile boolean timedOut = false;
+
+        TimedBody(InputStream body) {
+            super(body);
+            watch(this);
+        }
+
+        private IOException timeout(IOException e) {
+            return timedOut ? new SocketTimeoutException("Read timed out after " + READ_TIMEOUT + " ms") : e;
+        }
+
+        @Override
+        public int read() throws IOException {
+            readingSince = System.nanoTime();
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw timeout(e);
+            } finally {
+                readingSince = 0;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            readingSince = System.nanoTime();
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException e) {
+                throw timeout(e);
+            } finally {
+                readingSince = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            bodies.remove(this);
+            super.close();
+        }
+    }
+
+    private static class ClientResponse implements Response {
+        private final HttpResponse<InputStream> response;
+        private final TimedBody body;
+
+        ClientResponse(HttpResponse<InputStream> response) {
+            this.response = response;
+            this.body = new TimedBody(response.body());
+        }
+
+        @Override
+        public int getStatusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public long getContentLength() {
+            return response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void close() {
+            try {
+                body.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+}
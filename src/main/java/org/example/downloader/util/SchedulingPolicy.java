@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The order in which packages are handed to workers. A run lasts at least as long as its
+ * largest download, so starting the large downloads first keeps a large artifact from
+ * finishing alone at the end while the other workers sit idle. Starting the small ones
+ * first shows progress quickly instead.
+ */
+public enum SchedulingPolicy {
+    NATURAL("natural"),
+    LARGEST_FIRST("largest-first"),
+    SMALLEST_FIRST("smallest-first"),
+    SIZE_BALANCED("size-balanced");
+
+    private final String name;
+
+    SchedulingPolicy(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static SchedulingPolicy fromString(String name) {
+        for (SchedulingPolicy policy : values()) {
+            if (policy.name.equalsIgnoreCase(name.trim())) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown scheduling policy: " + name);
+    }
+
+    public static List<String> toStringList() {
+        List<String> names = new ArrayList<>();
+        for (SchedulingPolicy policy : values()) {
+            names.add(policy.name);
+        }
+        return names;
+    }
+
+    private static long byteSizeOf(BasePackage pkg) {
+        try {
+            return pkg.getByteSize();
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Orders packages by the policy. The size balanced order alternates between the largest
+     * and the smallest remaining package, so the large downloads start early while small
+     * ones keep finishing.
+     *
+     * @param packages The packages.
+     * @param <P>      The package type.
+     * @return The packages in the order they are to be downloaded.
+     */
+    public <P extends BasePackage> List<P> order(Collection<P> packages) {
+        List<P> ordered = new ArrayList<>(packages);
+        if (this == NATURAL) {
+            return ordered;
+        }
+        ordered.sort(Comparator.comparingLong(SchedulingPolicy::byteSizeOf));
+        if (this == SMALLEST_FIRST) {
+            return ordered;
+        }
+
+        List<P> result = new ArrayList<>(ordered.size());
+        int low = 0;
+        int high = ordered.size() - 1;
+        while (low <= high) {
+            result.add(ordered.get(high--));
+            if (this == SIZE_BALANCED && low <= high) {
+                result.add(ordered.get(low++));
+            }
+        }
+        return result;
+    }
+}
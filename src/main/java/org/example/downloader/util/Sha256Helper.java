@@ -15,12 +15,12 @@
 package org.example.downloader.util;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.function.LongConsumer;
 
 /**
  * Utility class for SHA-256 hash operations.
@@ -30,11 +30,24 @@ public class Sha256Helper {
 
     public static int BUFFER_SIZE = 8192;
 
+    // Files from this size on are hashed from large direct reads instead of heap reads
+    static final long LARGE_READ_THRESHOLD = 4 * 1024 * 1024;
+    static final int LARGE_READ_SIZE = 8 * 1024 * 1024;
+    // Bytes hashed between progress reports and checks for a stop
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    // Read buffers of the hashing routines, shared so that virtual threads do not each allocate one
+    static final BufferPool READ_BUFFERS = new BufferPool(CHUNK_SIZE, ExecutionMode.MAX_PLATFORM_THREADS, false);
+    // Hashing is bound by the processors, more large buffers than processors would sit idle
+    private static final BufferPool LARGE_READ_BUFFERS = new BufferPool(
+            LARGE_READ_SIZE, Runtime.getRuntime().availableProcessors(), true
+    );
+
     public static class Verifier {
         private final Path filePath;
         String sha256digest;
 
-        private float startTime;
+        private long startTime;
         private boolean hasExited = false;
         private boolean isComplete = false;
         private boolean hasError = false;
@@ -83,43 +96,95 @@ public class Sha256Helper {
 
         public long totalByteSize() { return totalSize; }
 
-        private long bytesProcessed = 0;
+        private volatile long bytesProcessed = 0;
         private long currentByte = 0;
+        private LongConsumer progressListener = bytes -> {};
+
+        /**
+         * Sets the listener told about progress, it is called with the number of bytes hashed.
+         *
+         * @param progressListener Called with the number of bytes.
+         */
+        public void setProgressListener(LongConsumer progressListener) {
+            this.progressListener = progressListener;
+        }
 
         public long totalBytesProcessed() { return bytesProcessed + currentByte; }
     }
 
+    /**
+     * Verifies the digest of the file of a task. Large files are read into large direct
+     * buffers, which spares copying them through a temporary buffer of the channel, smaller
+     * files are read in one or a few reads. Files are not memory mapped, a mapping lasts until
+     * the garbage collector frees it and on Windows keeps a file that failed verification from
+     * being deleted. Progress is reported and a stop is noticed every megabyte.
+     *
+     * @param task The task holding the file and its expected digest.
+     * @return true if the file matches the digest, false otherwise.
+     */
     public static boolean verifySha256(Verifier task) {
         try {
             if (!isValid64CharHex(task.sha256digest)) {
                 throw new IllegalArgumentException("Invalid SHA-256 digest format. Must be a 32-character hexadecimal string.");
             }
-            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-            byte[] buffer = new byte[BUFFER_SIZE];
-
-            task.totalSize = Files.size(task.filePath);
-            try (InputStream inputStream = Files.newInputStream(task.filePath)) {
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1 && !task.hasExited) {
-                    sha256.update(buffer, 0, bytesRead);
-                    task.bytesProcessed += bytesRead;
+            MessageDigest sha256 = DigestHelper.sha256();
+            task.startTime = System.currentTimeMillis();
+
+            try (FileChannel channel = FileChannel.open(task.filePath, StandardOpenOption.READ)) {
+                task.totalSize = channel.size();
+                if (task.totalSize >= LARGE_READ_THRESHOLD) {
+                    hashLargeRead(channel, sha256, task);
+                } else {
+                    hashRead(channel, sha256, task);
                 }
             }
 
-            byte[] computedHash = sha256.digest();
+            String computedDigest = DigestHelper.finishHex(sha256);
             if(task.totalByteSize() == task.totalBytesProcessed())
                 task.isComplete = true;
-            String computedDigest = bytesToHex(computedHash);
             task.hasError = !computedDigest.equalsIgnoreCase(task.sha256digest);
 
-        } catch (NoSuchAlgorithmException  e) {
-            throw new RuntimeException("SHA-256 hash algorithm not available!", e);
         } catch (IOException e) {
             task.hasError = true;
         }
         return !task.hasError();
     }
 
+    private static void hashLargeRead(FileChannel channel, MessageDigest sha256, Verifier task) throws IOException {
+        ByteBuffer buffer = LARGE_READ_BUFFERS.acquire();
+        try {
+            while (channel.read(buffer.clear()) != -1 && !task.hasExited) {
+                buffer.flip();
+                while (buffer.hasRemaining() && !task.hasExited) {
+                    int length = Math.min(CHUNK_SIZE, buffer.remaining());
+                    ByteBuffer chunk = buffer.slice();
+                    chunk.limit(length);
+                    sha256.update(chunk);
+                    buffer.position(buffer.position() + length);
+                    task.bytesProcessed += length;
+                    task.progressListener.accept(length);
+                }
+            }
+        } finally {
+            LARGE_READ_BUFFERS.release(buffer);
+        }
+    }
+
+    private static void hashRead(FileChannel channel, MessageDigest sha256, Verifier task) throws IOException {
+        ByteBuffer wrapped = READ_BUFFERS.acquire();
+        byte[] buffer = wrapped.array();
+        try {
+            int bytesRead;
+            while ((bytesRead = channel.read(wrapped.clear())) != -1 && !task.hasExited) {
+                sha256.update(buffer, 0, bytesRead);
+                task.bytesProcessed += bytesRead;
+                task.progressListener.accept(bytesRead);
+            }
+        } finally {
+            READ_BUFFERS.release(wrapped);
+        }
+    }
+
     /**
      * Verifies the SHA-256 digest of a file against a provided digest string.
      *
@@ -138,16 +203,8 @@ public class Sha256Helper {
      * @param bytes the byte array to convert
      * @return the hexadecimal representation of the byte array
      */
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : bytes) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
-            }
-            hexString.append(hex);
-        }
-        return hexString.toString();
+    static String bytesToHex(byte[] bytes) {
+        return DigestHelper.toHex(bytes);
     }
 
     /**
@@ -158,19 +215,7 @@ public class Sha256Helper {
      * @return the computed hash as a lowercase hexadecimal string
      */
     public static String computeHash(String data) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(data.getBytes(StandardCharsets.UTF_8));
-            StringBuilder hex = new StringBuilder();
-            for (byte b : digest) {
-                String h = Integer.toHexString(0xff & b);
-                if (h.length() == 1) hex.append('0');
-                hex.append(h);
-            }
-            return hex.toString().toLowerCase();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 not available", e);
-        }
+        return DigestHelper.sha256Hex(data);
     }
 
     /**
@@ -180,6 +225,6 @@ public class Sha256Helper {
      * @return true if the string is a valid 32-character hex, false otherwise
      */
     public static boolean isValid64CharHex(String input) {
-        return input != null && input.matches("^[0-9a-fA-F]{64}$");
+        return DigestHelper.isHex64(input);
     }
 }
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Aborts transfers that have been slower than a low speed limit for a low speed time,
+ * in the manner of curl's --speed-limit and --speed-time. The check runs once a second
+ * on its own thread and closes the connection of a stalled transfer, which also releases
+ * a worker blocked in a read that would otherwise wait for the read timeout. A legacy
+ * connection can not be closed under a blocked read, such a transfer still ends at the
+ * read timeout but is then known to have stalled.
+ */
+public class StallWatchdog {
+
+    public static final long DEFAULT_LOW_SPEED_LIMIT = 1024;
+    public static final int DEFAULT_LOW_SPEED_TIME = 30;
+
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private volatile long lowSpeedLimit = DEFAULT_LOW_SPEED_LIMIT;
+    private volatile int lowSpeedTime = DEFAULT_LOW_SPEED_TIME;
+    private volatile LongSupplier sharedRate = () -> 0;
+    private ScheduledExecutorService scheduler = null;
+
+    /**
+     * A transfer under watch, closing the watch ends it.
+     */
+    public class Watch implements AutoCloseable {
+        private final ThroughputMeter meter;
+        private final Closeable connection;
+        private final Runnable onStall;
+
+        private Watch(ThroughputMeter meter, Closeable connection, Runnable onStall) {
+            this.meter = meter;
+            this.connection = connection;
+            this.onStall = onStall;
+        }
+
+        @Override
+        public void close() {
+            watches.remove(this);
+        }
+    }
+
+    /**
+     * Sets the limit, a transfer below the rate for the whole time is aborted.
+     *
+     * @param lowSpeedLimit The rate in bytes per second, 0 disables the check.
+     * @param lowSpeedTime  The time in seconds, at most five minutes.
+     */
+    public void setLimit(long lowSpeedLimit, int lowSpeedTime) {
+        this.lowSpeedLimit = lowSpeedLimit;
+        this.lowSpeedTime = Math.max(1, Math.min(lowSpeedTime, ThroughputMeter.MAX_WINDOW_SECONDS));
+    }
+
+    /**
+     * Sets the source of a rate all transfers share, such as a bandwidth limit. When the share
+     * of each watched transfer falls below the low speed limit, the limit is lowered to half of
+     * that share so that throttled transfers are not mistaken for stalled ones.
+     *
+     * @param sharedRate Supplies the shared rate in bytes per second, 0 for unlimited.
+     */
+    public void setSharedRate(LongSupplier sharedRate) {
+        this.sharedRate = sharedRate;
+    }
+
+    public long getLowSpeedLimit() {
+        return lowSpeedLimit;
+    }
+
+    public int getLowSpeedTime() {
+        return lowSpeedTime;
+    }
+
+    /**
+     * Starts watching a transfer.
+     *
+     * @param meter      The meter the transfer records its bytes in.
+     * @param connection The connection to close when the transfer stalls.
+     * @param onStall    Called before the connection is closed.
+     * @return The watch, to be closed when the transfer ends.
+     */
+    public synchronized Watch watch(ThroughputMeter meter, Closeable connection, Runnable onStall) {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stall-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::check, 1, 1, TimeUnit.SECONDS);
+        }
+        Watch watch = new Watch(meter, connection, onStall);
+        watches.add(watch);
+        return watch;
+    }
+
+    private void check() {
+        long limit = lowSpeedLimit;
+        long time = lowSpeedTime * 1000L;
+        if (limit <= 0 || watches.isEmpty()) {
+            return;
+        }
+        long shared = sharedRate.getAsLong();
+        if (shared > 0) {
+            limit = Math.min(limit, shared / (2L * watches.size()));
+        }
+        long now = System.currentTimeMillis();
+        for (Watch watch : watches) {
+            if (now - watch.meter.getStartTime() >= time && watch.meter.getRate(time) < limit) {
+                watches.remove(watch);
+                watch.onStall.run();
+                // Closing can block until the read returns on some transports, so it must not hold up the check
+                Thread closer = new Thread(() -> {
+                    try {
+                        watch.connection.close();
+                    } catch (IOException | RuntimeException e) {
+                        // The transfer is aborted either way
+                    }
+                }, "stall-watchdog-close");
+                closer.setDaemon(true);
+                closer.start();
+            }
+        }
+    }
+}
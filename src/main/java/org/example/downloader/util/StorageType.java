@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The kind of storage a directory lives on. Reading many files at once pays off on solid
+ * state storage but makes a rotational disk seek between them, so work that reads files
+ * sizes its concurrency by the storage. The kind is read from the rotational flag Linux
+ * keeps for each block device, elsewhere or when the device can not be found it is unknown.
+ */
+public enum StorageType {
+    SOLID_STATE("ssd"),
+    ROTATIONAL("hdd"),
+    UNKNOWN("unknown");
+
+    private static final Path SYS_CLASS_BLOCK = Path.of("/sys/class/block");
+
+    private final String name;
+
+    StorageType(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Detects the kind of storage a path lives on.
+     *
+     * @param path A file or directory, the nearest existing parent is looked at if it is missing.
+     * @return The storage type.
+     */
+    public static StorageType detect(Path path) {
+        try {
+            Path existing = path.toAbsolutePath();
+            while (existing != null && !Files.exists(existing)) {
+                existing = existing.getParent();
+            }
+            if (existing == null) {
+                return UNKNOWN;
+            }
+            FileStore store = Files.getFileStore(existing);
+            String device = store.name();
+            if (!device.startsWith("/dev/")) {
+                return UNKNOWN;
+            }
+            Path block = SYS_CLASS_BLOCK.resolve(Path.of(device).toRealPath().getFileName().toString());
+            if (!Files.exists(block)) {
+                return UNKNOWN;
+            }
+            // A partition has no queue of its own, the flag is on the disk it belongs to
+            Path flag = block.resolve("queue/rotational");
+            if (!Files.exists(flag)) {
+                flag = block.toRealPath().getParent().resolve("queue/rotational");
+            }
+            if (!Files.exists(flag)) {
+                return UNKNOWN;
+            }
+            return Files.readString(flag, StandardCharsets.US_ASCII).trim().equals("1") ? ROTATIONAL : SOLID_STATE;
+        } catch (IOException | RuntimeException e) {
+            return UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+/**
+ * Measures the recent throughput of a transfer. Bytes are counted in one second buckets
+ * kept for the last few minutes, so the rate over any window up to that length can be
+ * read, unlike a lifetime average that hides a transfer which has slowed down or stalled.
+ */
+public class ThroughputMeter {
+
+    private static final long BUCKET_MILLIS = 1000;
+    static final int MAX_WINDOW_SECONDS = 300;
+
+    private final long[] buckets = new long[MAX_WINDOW_SECONDS + 1];
+    private final long startTime;
+    private long currentBucket = 0;
+
+    public ThroughputMeter() {
+        this.startTime = System.currentTimeMillis();
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    private void advance(long bucket) {
+        long clear = Math.min(bucket - currentBucket, buckets.length);
+        for (long i = 1; i <= clear; i++) {
+            buckets[(int) ((currentBucket + i) % buckets.length)] = 0;
+        }
+        if (bucket > currentBucket) {
+            currentBucket = bucket;
+        }
+    }
+
+    /**
+     * Counts bytes transferred now.
+     *
+     * @param bytes The number of bytes.
+     */
+    public synchronized void record(long bytes) {
+        advance((System.currentTimeMillis() - startTime) / BUCKET_MILLIS);
+        buckets[(int) (currentBucket % buckets.length)] += bytes;
+    }
+
+    /**
+     * Gets the rate over the most recent window, or since the start if the meter is younger.
+     *
+     * @param windowMillis The length of the window, at most MAX_WINDOW_SECONDS seconds.
+     * @return The rate in bytes per second.
+     */
+    public synchronized float getRate(long windowMillis) {
+        long elapsed = System.currentTimeMillis() - startTime;
+        advance(elapsed / BUCKET_MILLIS);
+
+        long windowBuckets = Math.min(MAX_WINDOW_SECONDS, Math.max(1, (windowMillis + BUCKET_MILLIS - 1) / BUCKET_MILLIS));
+        long firstBucket = Math.max(0, currentBucket - windowBuckets + 1);
+        long bytes = 0;
+        for (long i = firstBucket; i <= currentBucket; i++) {
+            bytes += buckets[(int) (i % buckets.length)];
+        }
+        long span = elapsed - firstBucket * BUCKET_MILLIS;
+        return span <= 0 ? 0.0f : bytes * 1000.0f / span;
+    }
+}
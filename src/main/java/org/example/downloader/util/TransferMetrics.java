@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the bytes processed by the workers of an executor. Workers push their progress
+ * as it happens instead of being polled for it, and the counter is striped so that many
+ * workers can add to it at once without contending. Reading the total never blocks and
+ * takes the same time whatever the number of workers.
+ */
+public class TransferMetrics {
+
+    private static final long RATE_INTERVAL = 1000;
+
+    private final LongAdder bytes = new LongAdder();
+    // The last sample taken for the rate, replaced as a whole so that readers never lock
+    private final AtomicReference<Sample> sample = new AtomicReference<>(new Sample(0, System.currentTimeMillis(), 0.0f));
+
+    private static class Sample {
+        final long bytes;
+        final long time;
+        final float rate;
+
+        Sample(long bytes, long time, float rate) {
+            this.bytes = bytes;
+            this.time = time;
+            this.rate = rate;
+        }
+    }
+
+    /**
+     * Counts processed bytes, a negative count takes back bytes that will be processed again.
+     *
+     * @param count The number of bytes.
+     */
+    public void add(long count) {
+        bytes.add(count);
+    }
+
+    /**
+     * Gets the bytes processed so far.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Gets the rate bytes were processed at recently, measured between calls at least a second
+     * apart, so that it follows the current speed rather than the average of the whole run.
+     * Never blocks, when callers race to take a new sample one of them wins and the others
+     * return its rate.
+     *
+     * @return The rate in bytes per second.
+     */
+    public float getRecentRate() {
+        Sample last = sample.get();
+        long now = System.currentTimeMillis();
+        if (now - last.time < RATE_INTERVAL) {
+            return last.rate;
+        }
+        long current = bytes.sum();
+        Sample next = new Sample(current, now, (current - last.bytes) * 1000.0f / (now - last.time));
+        return sample.compareAndSet(last, next) ? next.rate : sample.get().rate;
+    }
+}
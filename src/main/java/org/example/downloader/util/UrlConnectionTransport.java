@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Fallback transport engine that opens a new {@link HttpURLConnection} for every request
+ * and disconnects it when the response is closed.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    @Override
+    public Response request(URL url, String method, Map<String, String> headers, boolean followRedirects) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(followRedirects);
+        headers.forEach(connection::setRequestProperty);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        try {
+            connection.connect();
+            return new UrlConnectionResponse(connection, connection.getResponseCode());
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static class UrlConnectionResponse implements Response {
+        private final HttpURLConnection connection;
+        private final int statusCode;
+
+        UrlConnectionResponse(HttpURLConnection connection, int statusCode) {
+            this.connection = connection;
+            this.statusCode = statusCode;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return connection.getInputStream();
+        }
+
+        @Override
+        public void close() {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+
+/**
+ * Remembers the files that have been verified against their SHA-256 digest, so that a later
+ * verification can trust a file that has not changed since instead of hashing it again. A
+ * file is stamped with its size, modification time and file key, the inode on Unix, and an
+ * entry only vouches for the file while the stamp is the same. A file that has been rewritten,
+ * replaced or touched gets a new stamp and is hashed again. Every entry also remembers when
+ * the file was hashed, so that files can be hashed again once they have been trusted for long
+ * enough. The entries are kept in an index file in the cache directory.
+ */
+public class VerificationCache {
+
+    private static final String INDEX_FILE = "verified.properties";
+
+    private final Path cacheDir;
+    private final Properties index = new Properties();
+
+    public VerificationCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+        Path indexFile = cacheDir.resolve(INDEX_FILE);
+        try {
+            if (Files.exists(indexFile)) {
+                try (InputStream in = Files.newInputStream(indexFile)) {
+                    index.load(in);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load verification cache index", e);
+        }
+    }
+
+    private static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Stamps the file as it is now on disk.
+     *
+     * @param file The file to stamp.
+     * @return The size, modification time and file key of the file, or null if the file is
+     * missing or its attributes can not be read.
+     */
+    public static String stamp(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            Object fileKey = attributes.fileKey();
+            return attributes.size() + ":" + attributes.lastModifiedTime().toMillis() + ":" + (fileKey == null ? "" : fileKey);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets when the file was verified against the digest with the same stamp it has now.
+     *
+     * @param file   The file.
+     * @param stamp  The current stamp of the file.
+     * @param digest The SHA-256 digest the file should have.
+     * @return The time the file was hashed in milliseconds since the epoch, or -1 if the file
+     * has not been verified as it is now.
+     */
+    public long getVerifiedTime(Path file, String stamp, String digest) {
+        String entry = index.getProperty(key(file));
+        String prefix = stamp + " " + digest + " ";
+        if (stamp == null || entry == null || !entry.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(entry.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Checks if the file was verified against the digest with the same stamp it has now.
+     *
+     * @param file   The file.
+     * @param stamp  The current stamp of the file.
+     * @param digest The SHA-256 digest the file should have.
+     * @return true if the file can be trusted without hashing it.
+     */
+    public boolean isVerified(Path file, String stamp, String digest) {
+        return getVerifiedTime(file, stamp, digest) >= 0;
+    }
+
+    /**
+     * Checks if the file has an entry at all, a file with an entry that does not match its
+     * stamp has changed since it was hashed.
+     *
+     * @param file The file.
+     * @return true if the file has been hashed before.
+     */
+    public boolean contains(Path file) {
+        return index.containsKey(key(file));
+    }
+
+    /**
+     * Records that the file with the stamp was verified against the digest.
+     *
+     * @param file   The file.
+     * @param stamp  The stamp the file had when it was hashed.
+     * @param digest The SHA-256 digest the file was verified against.
+     */
+    public void put(Path file, String stamp, String digest) {
+        index.setProperty(key(file), stamp + " " + digest + " " + System.currentTimeMillis());
+    }
+
+    /**
+     * Forgets the file, it is hashed the next time it is verified.
+     *
+     * @param file The file.
+     */
+    public void remove(Path file) {
+        index.remove(key(file));
+    }
+
+    /**
+     * Writes the index to the cache directory, replacing the previous index atomically.
+     *
+     * @throws IOException if the index can not be written.
+     */
+    public synchronized void save() throws IOException {
+        Files.createDirectories(cacheDir);
+        Path indexFile = cacheDir.resolve(INDEX_FILE);
+        Path tempFile = cacheDir.resolve(INDEX_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            index.store(out, "Verified file stamps");
+        }
+        Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
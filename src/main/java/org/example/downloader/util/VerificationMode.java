@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How thoroughly the artifacts of a blockchain are verified. Every mode checks the links of
+ * the chain. A fast scan only hashes the artifacts that are not known to be unchanged since
+ * they were last hashed, which takes seconds once the cache is filled. The standard mode also
+ * hashes a rolling slice of the rest on each run, so that the whole archive is hashed again
+ * every few days. A deep scan, the default, hashes every artifact.
+ */
+public enum VerificationMode {
+    FAST("fast"),
+    STANDARD("standard"),
+    DEEP("deep");
+
+    private final String name;
+
+    VerificationMode(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static VerificationMode fromString(String name) {
+        for (VerificationMode mode : values()) {
+            if (mode.name.equalsIgnoreCase(name.trim())) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown verification mode: " + name);
+    }
+
+    public static List<String> toStringList() {
+        List<String> names = new ArrayList<>();
+        for (VerificationMode mode : values()) {
+            names.add(mode.name);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The order in which the artifacts of a blockchain are verified. The ledger order is the
+ * order the artifacts were downloaded in, which scatters the reads over the whole disk. The
+ * locality order reads the artifacts device by device, directory by directory and by inode
+ * within a directory, which roughly follows where the files lie on disk, and reads a
+ * rotational disk one file at a time so that it streams instead of seeking.
+ */
+public enum VerificationOrder {
+    LEDGER("ledger"),
+    LOCALITY("locality");
+
+    private final String name;
+
+    VerificationOrder(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static VerificationOrder fromString(String name) {
+        for (VerificationOrder order : values()) {
+            if (order.name.equalsIgnoreCase(name.trim())) {
+                return order;
+            }
+        }
+        throw new IllegalArgumentException("Unknown verification order: " + name);
+    }
+
+    public static List<String> toStringList() {
+        List<String> names = new ArrayList<>();
+        for (VerificationOrder order : values()) {
+            names.add(order.name);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only journal of the state of each job in a run, kept next to the blockchain, so
+ * that an interrupted run resumes from the journal alone instead of hashing every file in the
+ * blockchain again. Every change of state is one line written straight to the file, a process
+ * that is killed loses nothing written before. When the journal is opened the last state of
+ * each job is read, a torn last line is skipped, and the journal is compacted to one line per
+ * job before new lines are appended. Each line is forced to the disk before the call returns,
+ * so a journaled state also survives a power loss.
+ *
+ * A job is journaled as registered once its row is in the blockchain and as verified once it is
+ * exported as well. A resumed run takes a registered job through its export again but does not
+ * register it a second time, as long as the blockchain holds its row.
+ */
+public class WorkJournal implements AutoCloseable {
+
+    public static final String SUFFIX = ".journal";
+
+    public enum State {
+        PENDING("pending"),
+        IN_FLIGHT("in-flight"),
+        REGISTERED("registered"),
+        VERIFIED("verified"),
+        FAILED("failed");
+
+        private final String name;
+
+        State(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public static State fromString(String name) {
+            for (State state : values()) {
+                if (state.name.equalsIgnoreCase(name.trim())) {
+                    return state;
+                }
+            }
+            throw new IllegalArgumentException("Unknown journal state: " + name);
+        }
+    }
+
+    /**
+     * The last journaled state of a job.
+     */
+    public static class Entry {
+        private final State state;
+        private final long offset;
+
+        Entry(State state, long offset) {
+            this.state = state;
+            this.offset = offset;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * Gets how many bytes of the file were in place when the state was journaled.
+         *
+         * @return The byte offset.
+         */
+        public long getOffset() {
+            return offset;
+        }
+    }
+
+    private final Path journalFile;
+    private final Map<String, Entry> entries;
+    private final FileChannel channel;
+    private final Writer writer;
+
+    private WorkJournal(Path journalFile, Map<String, Entry> entries) throws IOException {
+        this.journalFile = journalFile;
+        this.entries = entries;
+        this.channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the journal file belonging to a blockchain.
+     *
+     * @param blockchainFile The blockchain file.
+     * @return The journal file next to it.
+     */
+    public static Path journalFileOf(Path blockchainFile) {
+        return blockchainFile.resolveSibling(blockchainFile.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Opens a journal, reading and compacting what an earlier run left.
+     *
+     * @param journalFile The journal file, created if missing.
+     * @return The journal.
+     */
+    public static WorkJournal open(Path journalFile) {
+        try {
+            Map<String, Entry> entries = new LinkedHashMap<>();
+            if (Files.exists(journalFile)) {
+                try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        parseLine(line, entries);
+                    }
+                }
+                compact(journalFile, entries);
+            }
+            return new WorkJournal(journalFile, entries);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open work journal " + journalFile, e);
+        }
+    }
+
+    /**
+     * Starts an empty journal, replacing any journal an earlier blockchain of the same name left.
+     *
+     * @param journalFile The journal file.
+     * @return The journal.
+     */
+    public static WorkJournal create(Path journalFile) {
+        try {
+            Files.deleteIfExists(journalFile);
+            return new WorkJournal(journalFile, new LinkedHashMap<>());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create work journal " + journalFile, e);
+        }
+    }
+
+    private static void parseLine(String line, Map<String, Entry> entries) {
+        String[] fields = line.split(" ");
+        if (fields.length != 3) {
+            return;
+        }
+        try {
+            entries.put(fields[1], new Entry(State.fromString(fields[0]), Long.parseLong(fields[2])));
+        } catch (IllegalArgumentException e) {
+            // A line torn by a crash is skipped, the job keeps its state from before
+        }
+    }
+
+    private static String formatLine(String key, State state, long offset) {
+        return state.getName() + " " + key + " " + offset + "\n";
+    }
+
+    private static void compact(Path journalFile, Map<String, Entry> entries) throws IOException {
+        Path tempFile = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer compacted = Channels.newWriter(out, StandardCharsets.UTF_8);
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                compacted.write(formatLine(entry.getKey(), entry.getValue().state, entry.getValue().offset));
+            }
+            compacted.flush();
+            out.force(true);
+        }
+        Files.move(tempFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Tells whether the journal holds any job, an empty journal has nothing to resume from.
+     *
+     * @return true if no job has been journaled, false otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Gets the last journaled state of a job.
+     *
+     * @param key The key of the job.
+     * @return The entry, or null if the job has not been journaled.
+     */
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Gets the jobs in a state.
+     *
+     * @param state The state.
+     * @return The keys of the jobs whose last state it is.
+     */
+    public synchronized List<String> getKeys(State state) {
+        List<String> keys = new ArrayList<>();
+        entries.forEach((key, entry) -> {
+            if (entry.state == state) {
+                keys.add(key);
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * Journals a change of state of a job.
+     *
+     * @param key    The key of the job, without spaces.
+     * @param state  The new state.
+     * @param offset How many bytes of the file are in place.
+     */
+    public synchronized void record(String key, State state, long offset) {
+        try {
+            writer.write(formatLine(key, state, offset));
+            writer.flush();
+            channel.force(false);
+            entries.put(key, new Entry(state, offset));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write to work journal " + journalFile, e);
+        }
+    }
+
+    /**
+     * Journals jobs not journaled before as pending, in one write.
+     *
+     * @param keys The keys of the jobs.
+     */
+    public synchronized void recordPending(Collection<String> keys) {
+        StringBuilder lines = new StringBuilder();
+        for (String key : keys) {
+            if (!entries.containsKey(key)) {
+                lines.append(formatLine(key, State.PENDING, 0));
+                entries.put(key, new Entry(State.PENDING, 0));
+            }
+        }
+        try {
+            writer.write(lines.toString());
+            writer.flush();
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write to work journal " + journalFile, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.flush();
+            channel.force(true);
+            writer.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to close work journal " + journalFile, e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs the work a worker has left once its transfer is done on stages of their own, so that
+ * a worker frees its network slot as soon as the transfer ends. Hashing runs on a pool sized
+ * to the processors, ledger writes on a single thread so that rows are appended one at a
+ * time, and exports on a thread of their own. Each stage takes work from a bounded queue, a
+ * stage that falls behind fills its queue and makes the stage before it wait, which in the end
+ * holds back the start of new transfers rather than letting finished files pile up.
+ */
+public class WorkPipeline {
+
+    /**
+     * The stages in the order work passes through them.
+     */
+    public enum Stage {
+        HASH("hash"),
+        LEDGER("ledger"),
+        EXPORT("export");
+
+        private final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final int EXPORT_THREADS = 1;
+
+    private final Map<Stage, ThreadPoolExecutor> stages = new EnumMap<>(Stage.class);
+    private final Logger logger;
+
+    public WorkPipeline(Logger logger) {
+        this(logger, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a pipeline whose stages queue at most the given amount of work.
+     *
+     * @param logger        The logger.
+     * @param queueCapacity How much work each stage queues before the stage before it waits.
+     */
+    public WorkPipeline(Logger logger, int queueCapacity) {
+        this.logger = logger;
+        stages.put(Stage.HASH, createStage(Stage.HASH, Runtime.getRuntime().availableProcessors(), queueCapacity));
+        stages.put(Stage.LEDGER, createStage(Stage.LEDGER, 1, queueCapacity));
+        stages.put(Stage.EXPORT, createStage(Stage.EXPORT, EXPORT_THREADS, queueCapacity));
+    }
+
+    private static ThreadPoolExecutor createStage(Stage stage, int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "pipeline-" + stage.getName() + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // A full queue makes the submitting thread wait for room
+                (runnable, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Pipeline stage " + stage.getName() + " is shut down");
+                    }
+                    try {
+                        pool.getQueue().put(runnable);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for pipeline stage " + stage.getName(), e);
+                    }
+                    // A stage shut down while waiting may never run what was queued, take it back
+                    if (pool.isShutdown() && pool.remove(runnable)) {
+                        throw new RejectedExecutionException("Pipeline stage " + stage.getName() + " is shut down");
+                    }
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Passes a worker whose run has returned through the stages it has work for. The call
+     * waits while the first of these stages has a full queue.
+     *
+     * @param worker The worker.
+     * @param onDone Called once the last stage is done with the worker, right away if it has no work left.
+     */
+    public void process(AbstractWorker worker, Runnable onDone) {
+        advance(worker, 0, onDone);
+    }
+
+    private void advance(AbstractWorker worker, int from, Runnable onDone) {
+        Stage[] order = Stage.values();
+        for (int i = from; i < order.length; i++) {
+            Runnable work = worker.getStageWork(order[i]);
+            if (work != null) {
+                Stage stage = order[i];
+                int next = i + 1;
+                try {
+                    stages.get(stage).execute(() -> {
+                        try {
+                            work.run();
+                        } catch (RuntimeException e) {
+                            logger.severe("Pipeline stage " + stage.getName() + " failed: " + e.getMessage());
+                            stageFailed(worker, stage, e);
+                        }
+                        advance(worker, next, onDone);
+                    });
+                    return;
+                } catch (RejectedExecutionException e) {
+                    logger.warning(e.getMessage() + ", remaining work skipped.");
+                    break;
+                }
+            }
+        }
+        onDone.run();
+    }
+
+    private void stageFailed(AbstractWorker worker, Stage stage, RuntimeException e) {
+        try {
+            worker.doWhenStageFailed(stage, e);
+        } catch (RuntimeException failure) {
+            logger.severe("Failed to handle failed pipeline stage " + stage.getName() + ": " + failure.getMessage());
+        }
+    }
+
+    /**
+     * Stops the stages once they have run out of work, without waiting for them.
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor executor : stages.values()) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Stops taking work and waits for the work already taken to pass through all stages.
+     *
+     * @param timeout How long to wait for each stage.
+     * @param unit    The unit of the timeout.
+     * @return true if all stages are done, false if the wait timed out.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        boolean done = true;
+        // Earlier stages hand work to later ones, so they are shut down first
+        for (Stage stage : Stage.values()) {
+            ThreadPoolExecutor executor = stages.get(stage);
+            executor.shutdown();
+            done &= executor.awaitTermination(timeout, unit);
+        }
+        return done;
+    }
+}
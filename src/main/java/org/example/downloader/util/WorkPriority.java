@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The lane a worker waits in for a free slot of a {@link WorkerExecutor}. Urgent work such as
+ * repository metadata or the retry of a nearly finished download takes the next free slot
+ * before normal work, and normal work before bulk downloads. The lower lanes are guaranteed a
+ * share of the slots, so that a steady stream of urgent work can not starve them.
+ */
+public enum WorkPriority {
+    URGENT("urgent"),
+    NORMAL("normal"),
+    BULK("bulk");
+
+    private final String name;
+
+    WorkPriority(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public static WorkPriority fromString(String name) {
+        for (WorkPriority priority : values()) {
+            if (priority.name.equalsIgnoreCase(name.trim())) {
+                return priority;
+            }
+        }
+        throw new IllegalArgumentException("Unknown work priority: " + name);
+    }
+
+    public static List<String> toStringList() {
+        List<String> names = new ArrayList<>();
+        for (WorkPriority priority : values()) {
+            names.add(priority.name);
+        }
+        return names;
+    }
+}
@@ -19,16 +19,145 @@ import org.example.downloader.*;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
 
 public abstract class Worker<E extends BasePackage> extends AbstractWorker {
 
+    // Percentage of a partial file at which its retry is urgent
+    private static final long NEARLY_DONE = 90;
+
     protected final E basePackage;
     protected final DownloadHelper.Download downloadTask;
+    private volatile boolean failed = false;
+    // A fully downloaded file waits for the pipeline to verify, register and export it
+    private volatile boolean awaitingVerification = false;
+    private volatile boolean verified = false;
+    private volatile long existingSize = -1;
+    private volatile WorkJournal journal = null;
+    // Set when the blockchain already holds the row of this download
+    private volatile boolean registered = false;
+    private volatile Path manifestDir = null;
+    private volatile VerificationCache verificationCache = null;
+    // A file that failed verification but has a manifest is repaired by the retry
+    private volatile boolean repairPending = false;
+    private volatile List<DownloadHelper.Download> incompleteDownloads = null;
 
     public Worker(E basePackage, DownloadHelper.Download downloadTask, WorkLogger logger) {
         super(logger);
         this.basePackage = basePackage;
         this.downloadTask = downloadTask;
+        this.downloadTask.setProgressListener(this::reportProgress);
+        this.downloadTask.setDigestAlgorithms(basePackage.getDigests().keySet());
+    }
+
+    /**
+     * Sets the journal the state of the download is recorded in. A download the journal has as
+     * registered is not registered again.
+     *
+     * @param journal The journal, null to record nothing.
+     */
+    public void setJournal(WorkJournal journal) {
+        this.journal = journal;
+        WorkJournal.Entry entry = journal == null ? null : journal.get(basePackage.getSha256Digest());
+        registered = entry != null && entry.getState() == WorkJournal.State.REGISTERED;
+    }
+
+    /**
+     * Sets the directory the piece manifests of verified downloads are kept in. A verified
+     * download leaves its manifest there, and a file that later fails verification is repaired
+     * from its manifest instead of being downloaded again.
+     *
+     * @param manifestDir The directory, null to neither keep nor use manifests.
+     */
+    public void setManifestDir(Path manifestDir) {
+        this.manifestDir = manifestDir;
+    }
+
+    /**
+     * Sets the cache a verified download is recorded in, so that a later verification in the
+     * fast or standard mode trusts the file without hashing it again.
+     *
+     * @param verificationCache The cache, null to record nothing.
+     */
+    public void setVerificationCache(VerificationCache verificationCache) {
+        this.verificationCache = verificationCache;
+    }
+
+    /**
+     * Sets the list downloads that are left incomplete are added to.
+     *
+     * @param incompleteDownloads The list, null to keep no such list.
+     */
+    public void setIncompleteDownloads(List<DownloadHelper.Download> incompleteDownloads) {
+        this.incompleteDownloads = incompleteDownloads;
+    }
+
+    private void recordIncomplete() {
+        List<DownloadHelper.Download> current = incompleteDownloads;
+        if (current != null) {
+            current.add(downloadTask);
+        }
+    }
+
+    /**
+     * Records the download as incomplete when the run was stopped. Failed work is retried and
+     * only recorded once it is abandoned, a manual stop leaves it incomplete right away.
+     */
+    protected void recordIncompleteIfStopped() {
+        if (!hasFailed()) {
+            recordIncomplete();
+        }
+    }
+
+    @Override
+    protected void doWhenAbandoned() {
+        recordIncomplete();
+        logger.warning("Download of " + basePackage.uniqueKey() + " abandoned after " + getAttempt() + " retries.");
+    }
+
+    private void journal(WorkJournal.State state, long offset) {
+        WorkJournal current = journal;
+        if (current != null) {
+            current.record(basePackage.getSha256Digest(), state, offset);
+        }
+    }
+
+    @Override
+    protected void prepareRetry(AbstractWorker retry) {
+        if (retry instanceof Worker) {
+            ((Worker<?>) retry).setJournal(journal);
+            ((Worker<?>) retry).registered = registered;
+            ((Worker<?>) retry).setManifestDir(manifestDir);
+            ((Worker<?>) retry).setVerificationCache(verificationCache);
+            ((Worker<?>) retry).setIncompleteDownloads(incompleteDownloads);
+            ((Worker<?>) retry).repairPending = repairPending;
+        }
+    }
+
+    /**
+     * Package downloads are bulk work, except for the retry of a download that is nearly done,
+     * which goes first so that a finished file does not wait behind whole new downloads.
+     */
+    @Override
+    public WorkPriority getPriority() {
+        if (getAttempt() > 0 && basePackage.getByteSize() > 0) {
+            try {
+                Path downloadPath = downloadTask.getFilePath();
+                if (Files.exists(downloadPath) && !DownloadHelper.isSegmented(downloadPath)
+                        && Files.size(downloadPath) >= basePackage.getByteSize() * NEARLY_DONE / 100) {
+                    return WorkPriority.URGENT;
+                }
+            } catch (IOException e) {
+                // The partial file is looked at again when the retry runs
+            }
+        }
+        return WorkPriority.BULK;
+    }
+
+    @Override
+    public String getHost() {
+        return downloadTask.getUrl().getHost();
     }
 
     protected abstract void doWhenDownloadVerifiedSuccessful() throws IOException;
@@ -41,13 +170,60 @@ public abstract class Worker<E extends BasePackage> extends AbstractWorker {
 
     protected abstract void doWhenUnexpected() throws IOException;
 
+    /**
+     * Exports a verified download, called on the export stage after the download has been
+     * registered. The default exports nothing.
+     *
+     * @throws IOException if the export fails.
+     */
+    protected void doExport() throws IOException {}
+
+    /**
+     * Verifies the download against the digests of its package. All of them are computed
+     * while downloading, so a downloaded file is verified without reading it again. A file
+     * that was already on disk has its digests computed in one read of the file.
+     */
     protected boolean verifySha256Digest() throws IOException {
+        return verifyDigests(downloadTask.getComputedDigests());
+    }
+
+    private boolean verifyDigests(Map<String, String> computedDigests) throws IOException {
+        Map<String, String> digests = basePackage.getDigests();
+        // The SHA-256 digest is required, the others only add to it
+        if (digests.size() > 1 && DigestHelper.isHex64(basePackage.getSha256Digest())) {
+            MultiDigestVerifier verifier = new MultiDigestVerifier(downloadTask.getFilePath(), digests);
+            computedDigests.forEach(verifier::supply);
+            return verifier.verify();
+        }
+        String computedDigest = computedDigests.get(MultiDigestVerifier.SHA256);
+        if (computedDigest != null) {
+            return computedDigest.equalsIgnoreCase(basePackage.getSha256Digest());
+        }
         return Sha256Helper.verifySha256Digest(
                 downloadTask.getFilePath(),
                 basePackage.getSha256Digest()
         );
     }
 
+    /**
+     * A download is complete when the file has reached the expected size and no segmented
+     * transfer is pending, since segmented downloads preallocate the file to its full size.
+     */
+    protected boolean isFullyDownloaded(Path downloadPath) throws IOException {
+        return Files.exists(downloadPath)
+                && Files.size(downloadPath) >= basePackage.getByteSize()
+                && !DownloadHelper.isSegmented(downloadPath);
+    }
+
+    /**
+     * Transfers the file, the default resumes a partial download or starts a new one.
+     *
+     * @return The number of bytes downloaded.
+     */
+    protected long transfer() {
+        return DownloadHelper.download(downloadTask, basePackage.getByteSize(), workLogger);
+    }
+
     @Override
     public void run() {
         if (!isRunning.compareAndSet(false, true)) {
@@ -61,45 +237,44 @@ public abstract class Worker<E extends BasePackage> extends AbstractWorker {
             if (Files.exists(downloadPath)) {
                 long downloadedSize = Files.size(downloadPath);
 
-                if(downloadedSize >= basePackage.getByteSize()) {
-                    if(verifySha256Digest()) {
-                        doWhenDownloadVerifiedSuccessful();
-                        downloadTask.enforceComplete();
-                        downloadTask.enforceCurrentByte(downloadedSize);
-                    } else {
-                        doWhenDownloadVerifiedFailure();
+                if(isFullyDownloaded(downloadPath)) {
+                    existingSize = downloadedSize;
+                    if (repairPending) {
+                        repair();
                     }
-                    isRunning.set(false);
+                    awaitingVerification = true;
                     return;
                 }
 
-                downloadTask.enforceCurrentByte(downloadedSize);
+                if(!DownloadHelper.isSegmented(downloadPath)) {
+                    downloadTask.enforceCurrentByte(downloadedSize);
+                }
+                journal(WorkJournal.State.IN_FLIGHT, downloadTask.totalBytesDownloaded());
                 logger.info("Resuming download for " + basePackage.uniqueKey());
             } else {
+                journal(WorkJournal.State.IN_FLIGHT, 0);
                 logger.info("Starting download for " + basePackage.uniqueKey());
             }
 
-            long bytesDownloaded = DownloadHelper.continueDownload(downloadTask, workLogger);
-            long currentByteSize = Files.size(downloadTask.getFilePath());
+            long bytesDownloaded = transfer();
 
             if(downloadTask.hasTimedOut()) {
                 logger.info("Download of " + basePackage.uniqueKey() + " halted due to time out for some reason, continue another time please.");
+                failed = true;
+                journal(WorkJournal.State.FAILED, downloadTask.totalBytesDownloaded());
                 doWhenTimedOut();
             } else if(downloadTask.httpError()) {
                 logger.severe("Download file " + basePackage.uniqueKey() + " marked as complete but file size differ, investigate!");
+                failed = true;
+                journal(WorkJournal.State.FAILED, downloadTask.totalBytesDownloaded());
                 doWhenError();
-            } else if(currentByteSize >= basePackage.getByteSize()) {
+            } else if(isFullyDownloaded(downloadPath)) {
                 logger.info("Download of " + basePackage.uniqueKey() + " completed.");
-
-                if(verifySha256Digest()) {
-                    logger.info("Download of " + basePackage.uniqueKey() + " sha256 digest verified, download file is intact.");
-                    doWhenDownloadVerifiedSuccessful();
-                } else {
-                    logger.warning("Download of " + basePackage.uniqueKey() + " file failed sha256 verification");
-                    doWhenDownloadVerifiedFailure();
-                }
+                awaitingVerification = true;
             } else {
                 logger.info("Download of " + basePackage.uniqueKey() + " incomplete due to manual stop, continue another time please.");
+                failed = !downloadTask.isStopped();
+                journal(failed ? WorkJournal.State.FAILED : WorkJournal.State.IN_FLIGHT, downloadTask.totalBytesDownloaded());
                 doWhenUnexpected();
             }
         } catch (IOException e) {
@@ -109,6 +284,149 @@ public abstract class Worker<E extends BasePackage> extends AbstractWorker {
         }
     }
 
+    /**
+     * A fully downloaded file is verified on the hash stage, a verified file is registered on
+     * the ledger stage and exported on the export stage. The work for a stage is looked up once
+     * the stage before it is done, so a file that fails verification goes no further.
+     */
+    @Override
+    protected Runnable getStageWork(WorkPipeline.Stage stage) {
+        if (!awaitingVerification) {
+            return null;
+        }
+        switch (stage) {
+            case HASH:
+                return this::verify;
+            case LEDGER:
+                return verified ? this::register : null;
+            case EXPORT:
+                return verified ? this::export : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * A stage that throws leaves the download failed, so that it is retried. The retry verifies
+     * the file again and does not register a download that is already registered.
+     */
+    @Override
+    protected void doWhenStageFailed(WorkPipeline.Stage stage, RuntimeException e) {
+        verified = false;
+        failed = true;
+        journal(WorkJournal.State.FAILED, basePackage.getByteSize());
+    }
+
+    private void verify() {
+        try {
+            if(verifySha256Digest()) {
+                if (repairPending) {
+                    logger.info("Download of " + basePackage.uniqueKey() + " repaired from its piece manifest.");
+                } else if (existingSize < 0) {
+                    logger.info("Download of " + basePackage.uniqueKey() + " sha256 digest verified, download file is intact.");
+                }
+                saveManifest();
+                stampVerified();
+                verified = true;
+            } else if (!repairPending && loadRepairManifest() != null) {
+                // The damaged pieces are fetched by the retry, under the limits of the executor
+                logger.info("Download of " + basePackage.uniqueKey() + " failed sha256 verification, damaged pieces are fetched again.");
+                repairPending = true;
+                failed = true;
+                journal(WorkJournal.State.FAILED, basePackage.getByteSize());
+            } else {
+                if (existingSize < 0) {
+                    logger.warning("Download of " + basePackage.uniqueKey() + " file failed sha256 verification");
+                }
+                failed = true;
+                journal(WorkJournal.State.FAILED, 0);
+                doWhenDownloadVerifiedFailure();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void stampVerified() {
+        VerificationCache cache = verificationCache;
+        if (cache == null) {
+            return;
+        }
+        Path file = downloadTask.getFilePath();
+        String stamp = VerificationCache.stamp(file);
+        if (stamp != null) {
+            cache.put(file, stamp, basePackage.getSha256Digest());
+        }
+    }
+
+    private void saveManifest() throws IOException {
+        Path dir = manifestDir;
+        PieceManifest manifest = downloadTask.getPieceManifest();
+        // A file of a single piece is as quick to download again as to repair
+        if (dir != null && manifest != null && manifest.getPieceCount() > 1) {
+            manifest.save(PieceManifest.manifestFile(dir, basePackage.getSha256Digest()));
+        }
+    }
+
+    /**
+     * Loads the manifest kept when the file was last verified, if it still describes the file.
+     *
+     * @return The manifest, null if the file can not be repaired from one.
+     */
+    private PieceManifest loadRepairManifest() throws IOException {
+        Path dir = manifestDir;
+        if (dir == null) {
+            return null;
+        }
+        PieceManifest manifest = PieceManifest.load(PieceManifest.manifestFile(dir, basePackage.getSha256Digest()));
+        if (manifest == null || Files.size(downloadTask.getFilePath()) != manifest.getTotalSize()) {
+            return null;
+        }
+        return manifest;
+    }
+
+    /**
+     * Repairs a file that failed verification from the manifest kept when it was last verified,
+     * only the pieces that no longer match are downloaded again. This runs in place of the
+     * transfer of a retry, the repaired file is verified on the hash stage like any other, and
+     * one that still fails is handled as a failed verification.
+     */
+    private void repair() throws IOException {
+        PieceManifest manifest = loadRepairManifest();
+        if (manifest == null) {
+            return;
+        }
+        long fetched = DownloadHelper.repairDownload(downloadTask, manifest, workLogger);
+        if (fetched >= 0) {
+            logger.info("Fetched " + fetched + " damaged bytes of " + basePackage.uniqueKey() + " again.");
+        }
+    }
+
+    private void register() {
+        try {
+            if (!registered) {
+                doWhenDownloadVerifiedSuccessful();
+                registered = true;
+                journal(WorkJournal.State.REGISTERED, basePackage.getByteSize());
+            }
+            if (existingSize >= 0) {
+                downloadTask.enforceComplete();
+                downloadTask.enforceCurrentByte(existingSize);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void export() {
+        try {
+            doExport();
+            journal(WorkJournal.State.VERIFIED, basePackage.getByteSize());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     protected void stopProcessImpl() {
         downloadTask.stop();
         logger.info("Download stopped for " + basePackage.uniqueKey());
@@ -116,12 +434,14 @@ public abstract class Worker<E extends BasePackage> extends AbstractWorker {
 
     public float getSpeed() { return downloadTask.getSpeed(); }
     public float getTime() { return downloadTask.getTime(); }
-    public long getCurrentProcessSize() {
-        synchronized (downloadTask) {
-            return downloadTask.totalBytesDownloaded();
-        }
-    }
 
     public boolean isRunning() { return isRunning.get() && !isCompleted(); }
     public boolean isCompleted() { return downloadTask.isComplete(); }
+
+    /**
+     * A download fails when it times out, errors, ends short without being stopped or does not
+     * pass verification. The partial file is kept so that a retry resumes where this one ended.
+     */
+    @Override
+    public boolean hasFailed() { return failed; }
 }
\ No newline at end of file
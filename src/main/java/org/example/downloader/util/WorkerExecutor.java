@@ -16,32 +16,174 @@ package org.example.downloader.util;
 
 import org.example.downloader.WorkLogger;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
+/**
+ * Runs workers from an iterator without a lock on the completion path. Completed workers,
+ * due retries and concurrency changes are posted to lock-free queues, and the thread that
+ * posts an event dispatches unless another thread is already dispatching, in which case
+ * that thread picks the event up before it stops. Only one thread dispatches at a time,
+ * so the scheduling state needs no lock, and no thread ever waits for another to dispatch.
+ * Workers push their progress to shared metrics, which are read without locking.
+ * A worker gives up its slot once its run returns, the work it has left is done on the
+ * stages of a {@link WorkPipeline} before the worker counts as completed. Free slots go to
+ * waiting workers by {@link WorkPriority}, every lane with work waiting gets at least one
+ * start in four so that urgent work can not starve bulk work.
+ */
 public class WorkerExecutor {
     private final ExecutorService executorService;
-    private final List<AbstractWorker> activeWorkers;
+    private final Set<AbstractWorker> activeWorkers = ConcurrentHashMap.newKeySet();
     private final AbstractWorkerIterator<?> workerIterator;
     private final Logger logger;
     private final AtomicBoolean isRunning;
-    private final AtomicLong totalBytesCompleted = new AtomicLong();
-    private static final int MAX_CONCURRENT_WORKERS = 8;
-    private long startTime;
-    private long endTime = -1;
+    private final TransferMetrics metrics = new TransferMetrics();
+    public static final int DEFAULT_RETRY_LIMIT = 3;
+    public static final int DEFAULT_HOST_CONNECTION_LIMIT = 4;
+    private static final long RETRY_BASE_DELAY = 1000;
+    private static final long RETRY_MAX_DELAY = 60000;
+    private volatile long startTime;
+    private volatile long endTime = -1;
+
+    // Dispatch requests not yet handled, the thread raising it from zero dispatches
+    private final AtomicInteger dispatchRequests = new AtomicInteger();
+    private final Queue<AbstractWorker> releases = new ConcurrentLinkedQueue<>();
+    private final Queue<AbstractWorker> completions = new ConcurrentLinkedQueue<>();
+    private final WorkPipeline pipeline;
+    // Workers done with their slot but not with the pipeline, owned by the dispatching thread
+    private final Set<AbstractWorker> processingWorkers = new HashSet<>();
+    private final Queue<AbstractWorker> dueRetries = new ConcurrentLinkedQueue<>();
+
+    private final ConcurrencyLimit concurrencyLimit;
+    private final AdaptiveConcurrency adaptiveConcurrency;
+    private volatile int concurrency;
+    // Workers finished and failed since the last concurrency sample
+    private final AtomicInteger finishedSinceSample = new AtomicInteger();
+    private final AtomicInteger failedSinceSample = new AtomicInteger();
+
+    private final int retryLimit;
+    private final ScheduledExecutorService scheduler;
+    // Retries waiting for their backoff to pass, owned by the dispatching thread
+    private final Set<AbstractWorker> delayedRetries = new HashSet<>();
+
+    // Workers ready to run by priority, retries ahead of new work in their lane, owned by the dispatching thread
+    private final Map<WorkPriority, Deque<AbstractWorker>> lanes = new EnumMap<>(WorkPriority.class);
+    private int queuedWorkers = 0;
+    // Set once the iterator has failed, no more work is taken from it, owned by the dispatching thread
+    private boolean iteratorFailed = false;
+    // Starts given to higher lanes while a lane had work waiting
+    private final int[] passedOver = new int[WorkPriority.values().length];
+    // A waiting lane gets at least one start in this many
+    private static final int LANE_SHARE_INTERVAL = 4;
+    // Workers waiting for a busy host are taken ahead up to this many times the concurrency
+    private static final int BLOCKED_LOOKAHEAD_FACTOR = 8;
+
+    private volatile int hostConnectionLimit = 0;
+    // Running workers per host, owned by the dispatching thread
+    private final Map<String, Integer> hostConnections = new ConcurrentHashMap<>();
 
 
     public WorkerExecutor(AbstractWorkerIterator<?> workerIterator, WorkLogger logger) {
+        this(workerIterator, logger, DEFAULT_RETRY_LIMIT);
+    }
+
+    /**
+     * Creates an executor that retries failed workers within the same run.
+     *
+     * @param workerIterator The source of workers.
+     * @param logger         The logger.
+     * @param retryLimit     How many times failed work is retried before it is abandoned.
+     */
+    public WorkerExecutor(AbstractWorkerIterator<?> workerIterator, WorkLogger logger, int retryLimit) {
+        this(workerIterator, logger, retryLimit, ConcurrencyLimit.DEFAULT, ExecutionMode.PLATFORM);
+    }
+
+    /**
+     * Creates an executor running as many workers at once as the concurrency limit allows,
+     * an adaptive limit is adjusted to the measured throughput and error rate.
+     *
+     * @param workerIterator   The source of workers.
+     * @param logger           The logger.
+     * @param retryLimit       How many times failed work is retried before it is abandoned.
+     * @param concurrencyLimit How many workers run at once.
+     * @param executionMode    Whether workers run on platform or virtual threads.
+     */
+    public WorkerExecutor(
+            AbstractWorkerIterator<?> workerIterator,
+            WorkLogger logger,
+            int retryLimit,
+            ConcurrencyLimit concurrencyLimit,
+            ExecutionMode executionMode
+    ) {
         this.logger = logger.getLogger();
-        this.executorService = Executors.newFixedThreadPool(MAX_CONCURRENT_WORKERS);
-        this.activeWorkers = Collections.synchronizedList(new ArrayList<>());
+        int cap = executionMode.capConcurrency(concurrencyLimit.getMax());
+        if (cap < concurrencyLimit.getMax()) {
+            this.logger.warning("Concurrency " + concurrencyLimit + " capped at " + cap + " workers on platform threads.");
+            concurrencyLimit = concurrencyLimit.cappedAt(cap);
+        }
+        this.executorService = executionMode.createExecutorService(concurrencyLimit.getMax(), this.logger);
+        this.concurrencyLimit = concurrencyLimit;
+        this.adaptiveConcurrency = concurrencyLimit.isAdaptive() ? new AdaptiveConcurrency(concurrencyLimit) : null;
+        this.concurrency = adaptiveConcurrency != null ? adaptiveConcurrency.getLimit() : concurrencyLimit.getMax();
         this.workerIterator = workerIterator;
         this.isRunning = new AtomicBoolean(false);
+        this.retryLimit = retryLimit;
+        this.workerIterator.setHostAvailability(this::hasHostCapacity);
+        this.pipeline = new WorkPipeline(this.logger);
+        for (WorkPriority priority : WorkPriority.values()) {
+            lanes.put(priority, new ArrayDeque<>());
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "worker-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Limits how many workers may connect to the same host at once. Workers for a host at the
+     * limit wait until one of its connections is done, while workers for other hosts go ahead.
+     *
+     * @param hostConnectionLimit The connections per host, 0 for no limit.
+     */
+    public void setHostConnectionLimit(int hostConnectionLimit) {
+        this.hostConnectionLimit = Math.max(0, hostConnectionLimit);
+        dispatch();
+    }
+
+    /**
+     * Tells whether a host can take another connection.
+     *
+     * @param host The host name, null for work that makes no connections.
+     * @return true if the host is below the connection limit, false otherwise.
+     */
+    public boolean hasHostCapacity(String host) {
+        return hasHostCapacity(host, 0);
+    }
+
+    private boolean hasHostCapacity(String host, int reserved) {
+        if (host == null) {
+            return true;
+        }
+        int limit = workerIterator.getHostLimit(host);
+        if (limit < 0) {
+            limit = hostConnectionLimit;
+        }
+        if (limit <= 0) {
+            return true;
+        }
+        return hostConnections.getOrDefault(host, 0) + reserved < limit;
     }
 
     public void start() {
@@ -50,69 +192,381 @@ public class WorkerExecutor {
             return;
         }
         this.startTime = System.currentTimeMillis();
-        submitNewWorkers();
+        if (adaptiveConcurrency != null) {
+            scheduler.scheduleAtFixedRate(this::adaptConcurrency,
+                    AdaptiveConcurrency.SAMPLE_INTERVAL, AdaptiveConcurrency.SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+        dispatch();
+    }
+
+    private void adaptConcurrency() {
+        int previous = concurrency;
+        concurrency = adaptiveConcurrency.update(
+                getCurrentTotalBytes(),
+                finishedSinceSample.getAndSet(0),
+                failedSinceSample.getAndSet(0),
+                activeWorkers.size()
+        );
+        if (concurrency != previous) {
+            logger.info("Concurrency changed from " + previous + " to " + concurrency + " workers.");
+            dispatch();
+        }
     }
 
     public void shutdown() {
-        if (!isRunning.get()) {
+        if (!isRunning.compareAndSet(true, false)) {
             logger.info("Executor is already shut down");
             return;
         }
-        isRunning.set(false);
         this.endTime = System.currentTimeMillis();
 
-        synchronized (activeWorkers) {
-            for (AbstractWorker worker : activeWorkers) {
-                if (worker.isRunning()) {
-                    worker.stopProcessing();
-                }
+        for (AbstractWorker worker : activeWorkers) {
+            if (worker.isRunning()) {
+                worker.stopProcessing();
             }
-            activeWorkers.clear();
         }
 
+        scheduler.shutdownNow();
         executorService.shutdown();
         try {
             if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
                 executorService.shutdownNow();
             }
+            // Downloads that made it into the pipeline are still verified and registered
+            if (!pipeline.shutdown(60, TimeUnit.SECONDS)) {
+                logger.warning("Pipeline did not finish within 60 seconds.");
+            }
         } catch (InterruptedException e) {
             executorService.shutdownNow();
             Thread.currentThread().interrupt();
             logger.severe("Executor shutdown interrupted: " + e.getMessage());
         }
+
+        // Failed workers that completed while stopping and pending work are abandoned
+        dispatch();
         logger.info("Executor shut down");
     }
 
+    /**
+     * Ends a run where all work is done. Nothing is running, so unlike shutdown() there is
+     * nothing to wait for, which matters as this is called on the thread of the last worker.
+     */
+    private void finish() {
+        if (!isRunning.compareAndSet(true, false)) {
+            return;
+        }
+        this.endTime = System.currentTimeMillis();
+        scheduler.shutdownNow();
+        executorService.shutdown();
+        pipeline.shutdown();
+        logger.info("Executor shut down");
+    }
+
+    private void dispatch() {
+        if (dispatchRequests.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            try {
+                processReleases();
+                processCompletions();
+                AbstractWorker retry;
+                while ((retry = dueRetries.poll()) != null) {
+                    if (delayedRetries.remove(retry)) {
+                        enqueue(retry, true);
+                    }
+                }
+                if (isRunning.get()) {
+                    submitNewWorkers();
+                } else {
+                    abandonPending();
+                }
+            } catch (RuntimeException e) {
+                // Dispatching must go on, or no thread would dispatch again
+                logger.severe("Failed to dispatch workers: " + e.getMessage());
+            }
+            missed = dispatchRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void abandonPending() {
+        List<AbstractWorker> unfinished = new ArrayList<>(delayedRetries);
+        lanes.values().forEach(unfinished::addAll);
+        delayedRetries.clear();
+        lanes.values().forEach(Deque::clear);
+        queuedWorkers = 0;
+        dueRetries.clear();
+        unfinished.forEach(this::abandon);
+    }
+
+    /**
+     * Frees the slots of workers whose run has returned, the worker may still be in the pipeline.
+     */
+    private void processReleases() {
+        AbstractWorker worker;
+        while ((worker = releases.poll()) != null) {
+            if (release(worker)) {
+                processingWorkers.add(worker);
+            }
+        }
+    }
+
+    private boolean release(AbstractWorker worker) {
+        if (!activeWorkers.remove(worker)) {
+            return false;
+        }
+        String host = worker.getHost();
+        if (host != null) {
+            hostConnections.computeIfPresent(host, (key, count) -> count > 1 ? count - 1 : null);
+        }
+        return true;
+    }
+
+    private void processCompletions() {
+        AbstractWorker worker;
+        while ((worker = completions.poll()) != null) {
+            // A worker that went through the pipeline quickly completes before its release is seen
+            if (!release(worker)) {
+                processingWorkers.remove(worker);
+            }
+            finishedSinceSample.incrementAndGet();
+            boolean retried = false;
+            if (worker.hasFailed()) {
+                failedSinceSample.incrementAndGet();
+                if (isRunning.get()) {
+                    retried = scheduleRetry(worker);
+                } else {
+                    abandon(worker);
+                }
+            }
+            // Bytes of retried work are counted by the retry, which resumes from the same partial file
+            if (retried) {
+                worker.detachMetrics();
+            }
+        }
+    }
+
     private void submitNewWorkers() {
-        synchronized (activeWorkers) {
-            while (activeWorkers.size() < MAX_CONCURRENT_WORKERS && workerIterator.hasNext() && isRunning.get()) {
-                submitWorker(workerIterator.next());
+        while (activeWorkers.size() < concurrency && isRunning.get()) {
+            // Workers are taken from the iterator a bounded number ahead, so urgent ones can go first.
+            // Only those that could start count, workers waiting for a busy host do not hold back
+            // work for other hosts, up to a bound that keeps the iterator from being drained.
+            Map<String, Integer> reserved = new HashMap<>();
+            int startable = countStartable(reserved);
+            while (startable < concurrency && queuedWorkers < concurrency * BLOCKED_LOOKAHEAD_FACTOR && hasMoreWork()) {
+                AbstractWorker next;
+                try {
+                    next = workerIterator.next();
+                } catch (RuntimeException e) {
+                    stopTakingWork(e);
+                    break;
+                }
+                enqueue(next, false);
+                if (reserve(next, reserved)) {
+                    startable++;
+                }
             }
+            AbstractWorker worker = takeNext();
+            if (worker == null) {
+                break;
+            }
+            submitWorker(worker);
         }
         checkCompletion();
     }
 
-    private void submitWorker(AbstractWorker worker) {
-        if (!worker.isCompleted()) {
-            executorService.submit(() -> {
-                worker.run();
-                synchronized (activeWorkers) {
-                    activeWorkers.remove(worker);
-                    totalBytesCompleted.getAndAdd(worker.getCurrentProcessSize());
+    /**
+     * Counts the queued workers that could start now, each reserving a connection to its host.
+     */
+    private int countStartable(Map<String, Integer> reserved) {
+        int startable = 0;
+        for (Deque<AbstractWorker> lane : lanes.values()) {
+            for (AbstractWorker worker : lane) {
+                if (reserve(worker, reserved)) {
+                    startable++;
+                }
+            }
+        }
+        return startable;
+    }
 
-                    submitNewWorkers();
+    private boolean reserve(AbstractWorker worker, Map<String, Integer> reserved) {
+        String host = worker.getHost();
+        if (!hasHostCapacity(host, reserved.getOrDefault(host, 0))) {
+            return false;
+        }
+        if (host != null) {
+            reserved.merge(host, 1, Integer::sum);
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the iterator has more work. An iterator that fails is taken as exhausted,
+     * the work already taken still runs and the run then ends as it would have otherwise.
+     */
+    private boolean hasMoreWork() {
+        if (iteratorFailed) {
+            return false;
+        }
+        try {
+            return workerIterator.hasNext();
+        } catch (RuntimeException e) {
+            stopTakingWork(e);
+            return false;
+        }
+    }
+
+    private void stopTakingWork(RuntimeException e) {
+        iteratorFailed = true;
+        logger.severe("Failed to take work from the iterator, no more work is started: " + e.getMessage());
+    }
+
+    private void enqueue(AbstractWorker worker, boolean first) {
+        if (worker.lane == null) {
+            worker.lane = worker.getPriority();
+        }
+        if (first) {
+            lanes.get(worker.lane).addFirst(worker);
+        } else {
+            lanes.get(worker.lane).addLast(worker);
+        }
+        queuedWorkers++;
+    }
+
+    /**
+     * Takes the worker to run next, from the highest lane with a worker whose host can take a
+     * connection. A lane passed over too many times while it had work waiting goes first.
+     */
+    private AbstractWorker takeNext() {
+        AbstractWorker worker = null;
+        for (WorkPriority priority : WorkPriority.values()) {
+            if (passedOver[priority.ordinal()] >= LANE_SHARE_INTERVAL - 1) {
+                worker = take(lanes.get(priority));
+                if (worker != null) {
+                    break;
+                }
+            }
+        }
+        if (worker == null) {
+            for (WorkPriority priority : WorkPriority.values()) {
+                worker = take(lanes.get(priority));
+                if (worker != null) {
+                    break;
+                }
+            }
+        }
+        if (worker != null) {
+            for (WorkPriority priority : WorkPriority.values()) {
+                if (priority == worker.lane) {
+                    passedOver[priority.ordinal()] = 0;
+                } else if (priority.compareTo(worker.lane) > 0 && !lanes.get(priority).isEmpty()) {
+                    passedOver[priority.ordinal()]++;
                 }
-            });
+            }
+        }
+        return worker;
+    }
+
+    /**
+     * Takes the first worker of a lane whose host is below its connection limit.
+     */
+    private AbstractWorker take(Deque<AbstractWorker> lane) {
+        Iterator<AbstractWorker> waiting = lane.iterator();
+        while (waiting.hasNext()) {
+            AbstractWorker worker = waiting.next();
+            if (hasHostCapacity(worker.getHost())) {
+                waiting.remove();
+                queuedWorkers--;
+                return worker;
+            }
+        }
+        return null;
+    }
+
+    private void submitWorker(AbstractWorker worker) {
+        if (!worker.isCompleted()) {
+            String host = worker.getHost();
+            if (host != null) {
+                hostConnections.merge(host, 1, Integer::sum);
+            }
             activeWorkers.add(worker);
+            worker.attachMetrics(metrics);
+            try {
+                executorService.submit(() -> {
+                    try {
+                        worker.run();
+                    } finally {
+                        // Waits while the pipeline is backed up, which holds back new work
+                        pipeline.process(worker, () -> {
+                            completions.add(worker);
+                            dispatch();
+                        });
+                        releases.add(worker);
+                        dispatch();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shut down while dispatching, the worker never ran
+                activeWorkers.remove(worker);
+                worker.detachMetrics();
+                if (host != null) {
+                    hostConnections.computeIfPresent(host, (key, count) -> count > 1 ? count - 1 : null);
+                }
+                abandon(worker);
+            }
+        }
+    }
+
+    /**
+     * Schedules a retry of failed work after an exponential backoff with jitter, or abandons
+     * the work when its retry budget is spent.
+     *
+     * @return true if a retry was scheduled, false if the work was abandoned.
+     */
+    private boolean scheduleRetry(AbstractWorker worker) {
+        AbstractWorker retry = worker.getAttempt() < retryLimit ? createRetry(worker) : null;
+        if (retry == null) {
+            abandon(worker);
+            return false;
+        }
+
+        long delay = Math.min(RETRY_MAX_DELAY, RETRY_BASE_DELAY << Math.min(worker.getAttempt(), 16));
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        logger.info("Retry " + retry.getAttempt() + " of " + retryLimit + " scheduled in " + delay + " ms.");
+
+        delayedRetries.add(retry);
+        scheduler.schedule(() -> {
+            dueRetries.add(retry);
+            dispatch();
+        }, delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private AbstractWorker createRetry(AbstractWorker worker) {
+        try {
+            return worker.retry();
+        } catch (RuntimeException e) {
+            // A retry that can not be created, such as when no source is left, gives the work up
+            logger.severe("Failed to create retry worker: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void abandon(AbstractWorker worker) {
+        try {
+            worker.doWhenAbandoned();
+        } catch (IOException | RuntimeException e) {
+            logger.severe("Failed to abandon worker: " + e.getMessage());
         }
     }
 
     private void checkCompletion() {
-        synchronized (activeWorkers) {
-            if (activeWorkers.isEmpty() && !workerIterator.hasNext() && isRunning.get()) {
-                logger.info("All downloads complete, shutting down executor.");
-                shutdown();
-            }
+        if (activeWorkers.isEmpty() && processingWorkers.isEmpty() && completions.isEmpty() && releases.isEmpty()
+                && delayedRetries.isEmpty() && queuedWorkers == 0 && !hasMoreWork() && isRunning.get()) {
+            logger.info("All downloads complete, shutting down executor.");
+            finish();
         }
     }
 
@@ -124,6 +578,19 @@ public class WorkerExecutor {
         return activeWorkers.size();
     }
 
+    /**
+     * Gets how many workers may currently run at once.
+     *
+     * @return The current concurrency, which varies between the bounds of an adaptive limit.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
     public float getTime() {
         if(endTime == -1)
             return (System.currentTimeMillis() - startTime) / 1000.0f;
@@ -136,13 +603,15 @@ public class WorkerExecutor {
     }
 
     public long getCurrentTotalBytes() {
-        AtomicLong processedBytes = new AtomicLong();
-        processedBytes.getAndAdd(totalBytesCompleted.get());
-
-        synchronized (activeWorkers) {
-            activeWorkers.forEach((w) -> processedBytes.addAndGet(w.getCurrentProcessSize()));
-        }
+        return metrics.getBytes();
+    }
 
-        return processedBytes.get();
+    /**
+     * Gets the metrics the workers of this executor report their progress to.
+     *
+     * @return The metrics.
+     */
+    public TransferMetrics getMetrics() {
+        return metrics;
     }
 }
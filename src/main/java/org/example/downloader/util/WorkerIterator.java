@@ -14,10 +14,56 @@
  */
 package org.example.downloader.util;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 public abstract class WorkerIterator<E extends BasePackage> extends AbstractWorkerIterator<Worker<E>> {
 
+    private volatile WorkJournal journal = null;
+    private volatile Path manifestDir = null;
+    private volatile VerificationCache verificationCache = null;
+    private final List<DownloadHelper.Download> incompleteDownloads = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Sets the journal the workers record the state of their downloads in.
+     *
+     * @param journal The journal, null to record nothing.
+     */
+    public void setJournal(WorkJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets the directory the workers keep and look up the piece manifests of downloads in.
+     *
+     * @param manifestDir The directory, null to neither keep nor use manifests.
+     */
+    public void setManifestDir(Path manifestDir) {
+        this.manifestDir = manifestDir;
+    }
+
+    /**
+     * Sets the cache the workers record the downloads they verify in.
+     *
+     * @param verificationCache The cache, null to record nothing.
+     */
+    public void setVerificationCache(VerificationCache verificationCache) {
+        this.verificationCache = verificationCache;
+    }
+
+    /**
+     * Gets the downloads left incomplete, those abandoned after their retries and those of a
+     * stopped run.
+     *
+     * @return The incomplete downloads.
+     */
+    public List<DownloadHelper.Download> getIncompleteDownloads() {
+        return incompleteDownloads;
+    }
+
     protected abstract Worker<E> createWorker();
 
     @Override
@@ -28,7 +74,12 @@ public abstract class WorkerIterator<E extends BasePackage> extends AbstractWork
         if (!hasNext()) {
             throw new NoSuchElementException("No more workers available");
         }
-        return createWorker();
+        Worker<E> worker = createWorker();
+        worker.setJournal(journal);
+        worker.setManifestDir(manifestDir);
+        worker.setVerificationCache(verificationCache);
+        worker.setIncompleteDownloads(incompleteDownloads);
+        return worker;
     }
 
     @Override
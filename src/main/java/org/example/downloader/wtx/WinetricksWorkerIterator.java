@@ -17,6 +17,7 @@ package org.example.downloader.wtx;
 import org.example.downloader.WorkLogger;
 import org.example.downloader.util.BlockChainHelper;
 import org.example.downloader.util.DownloadHelper;
+import org.example.downloader.util.SchedulingPolicy;
 import org.example.downloader.util.Worker;
 import org.example.downloader.util.WorkerIterator;
 
@@ -25,11 +26,8 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class WinetricksWorkerIterator extends WorkerIterator<WinetricksPackage> {
 
@@ -38,8 +36,6 @@ public class WinetricksWorkerIterator extends WorkerIterator<WinetricksPackage>
     private final WorkLogger logger;
     private final BlockChainHelper.Blockchain chain;
 
-    private final AtomicReference<List<DownloadHelper.Download>> incompleteDownloads = new AtomicReference<>(new ArrayList<>());
-
 
     public WinetricksWorkerIterator(WinetricksDownloadEnvironment wde, WorkLogger logger) {
         this.wde = wde;
@@ -51,11 +47,12 @@ public class WinetricksWorkerIterator extends WorkerIterator<WinetricksPackage>
     public WinetricksWorkerIterator(
             WinetricksDownloadEnvironment wde,
             HashMap<String, WinetricksPackage> packages,
+            SchedulingPolicy policy,
             BlockChainHelper.Blockchain chain,
             WorkLogger logger
     ) {
         this.wde = wde;
-        this.packageIterator = packages.values().iterator();
+        this.packageIterator = policy.order(packages.values()).iterator();
         this.chain = chain;
         this.logger = logger;
     }
@@ -76,10 +73,6 @@ public class WinetricksWorkerIterator extends WorkerIterator<WinetricksPackage>
         return packageIterator.hasNext();
     }
 
-    public List<DownloadHelper.Download> getIncompleteDownloads() {
-        return incompleteDownloads.get();
-    }
-
     public class WinetricksWorker extends Worker<WinetricksPackage> {
 
         private final BlockChainHelper.Blockchain chain;
@@ -110,20 +103,23 @@ public class WinetricksWorkerIterator extends WorkerIterator<WinetricksPackage>
 
         @Override
         protected void doWhenTimedOut() {
-            incompleteDownloads.get().add(downloadTask);
             System.out.println("Download timed out for " + basePackage.uniqueKey());
         }
 
         @Override
         protected void doWhenError() {
-            incompleteDownloads.get().add(downloadTask);
             System.out.println("Download errored for " + basePackage.uniqueKey());
         }
 
         @Override
         protected void doWhenUnexpected() {
-            incompleteDownloads.get().add(downloadTask);
+            recordIncompleteIfStopped();
             System.out.println("Something unexpected for " + basePackage.uniqueKey());
         }
+
+        @Override
+        protected WinetricksWorker createRetryWorker() {
+            return new WinetricksWorker(basePackage, new DownloadHelper.Download(downloadTask.getUrl(), downloadTask.getFilePath()), chain, workLogger);
+        }
     }
 }
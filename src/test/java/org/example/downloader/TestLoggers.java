@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Creates work loggers for tests, writing their log to a directory of the test.
+ */
+public final class TestLoggers {
+
+    private TestLoggers() {}
+
+    public static WorkLogger create(Path dir) throws IOException {
+        GeneralEnvironment ge = new GeneralEnvironment(dir.resolve("config.properties"));
+        ge.setCacheDir(dir);
+        return new WorkLogger(ge);
+    }
+}
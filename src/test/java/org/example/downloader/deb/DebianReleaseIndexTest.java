@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.deb;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Parsing of the index files listed in a Release or InRelease file.
+ */
+class DebianReleaseIndexTest {
+
+    private static final String PACKAGES_MD5 = "0123456789abcdef0123456789abcdef";
+    private static final String PACKAGES_SHA256 = "1111111111111111111111111111111111111111111111111111111111111111";
+    private static final String CONTENTS_SHA256 = "2222222222222222222222222222222222222222222222222222222222222222";
+
+    private static final String IN_RELEASE = String.join("\n",
+            "-----BEGIN PGP SIGNED MESSAGE-----",
+            "Hash: SHA256",
+            "",
+            "Origin: Debian",
+            "Suite: stable",
+            "Codename: bookworm",
+            "Components: main contrib non-free",
+            "MD5Sum:",
+            " " + PACKAGES_MD5 + "   8786836 main/binary-amd64/Packages.gz",
+            "SHA256:",
+            " " + PACKAGES_SHA256 + "   8786836 main/binary-amd64/Packages.gz",
+            " " + CONTENTS_SHA256 + " 48377264 main/Contents-amd64.gz",
+            " not-a-digest-line",
+            "Acquire-By-Hash: yes",
+            "-----BEGIN PGP SIGNATURE-----",
+            "",
+            "iQIzBAEBCAAdFiEE",
+            "-----END PGP SIGNATURE-----",
+            "");
+
+    @Test
+    void listsTheFilesOfTheSha256Field() {
+        DebianReleaseIndex index = DebianReleaseIndex.parse(IN_RELEASE);
+
+        assertEquals(2, index.size());
+        DebianReleaseIndex.Entry packages = index.get("main/binary-amd64/Packages.gz");
+        assertEquals(8786836L, packages.getSize());
+        assertEquals(PACKAGES_SHA256, packages.getSha256Digest());
+        DebianReleaseIndex.Entry contents = index.get("main/Contents-amd64.gz");
+        assertEquals(48377264L, contents.getSize());
+        assertEquals(CONTENTS_SHA256, contents.getSha256Digest());
+    }
+
+    @Test
+    void acceptsWindowsLineEndings() {
+        DebianReleaseIndex index = DebianReleaseIndex.parse(IN_RELEASE.replace("\n", "\r\n"));
+
+        assertEquals(2, index.size());
+        assertEquals(PACKAGES_SHA256, index.get("main/binary-amd64/Packages.gz").getSha256Digest());
+    }
+
+    @Test
+    void fileNotListedIsNull() {
+        DebianReleaseIndex index = DebianReleaseIndex.parse(IN_RELEASE);
+
+        assertNull(index.get("main/binary-arm64/Packages.gz"));
+    }
+
+    @Test
+    void releaseWithoutSha256FieldListsNothing() {
+        DebianReleaseIndex index = DebianReleaseIndex.parse("Origin: Debian\nMD5Sum:\n " + PACKAGES_MD5 + " 10 main/binary-amd64/Packages.gz\n");
+
+        assertEquals(0, index.size());
+    }
+}
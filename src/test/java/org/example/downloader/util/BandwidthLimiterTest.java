@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pacing of consumers by the bandwidth limiter.
+ */
+class BandwidthLimiterTest {
+
+    private static final long RATE = 1024 * 1024;
+
+    private static long millisToAcquire(BandwidthLimiter limiter, long bytes) throws InterruptedIOException {
+        long start = System.nanoTime();
+        limiter.acquire(bytes, () -> false);
+        return (System.nanoTime() - start) / 1_000_000L;
+    }
+
+    @Test
+    void unlimitedDoesNotWait() throws InterruptedIOException {
+        BandwidthLimiter limiter = new BandwidthLimiter(BandwidthSchedule.NONE);
+
+        assertTrue(millisToAcquire(limiter, 1L << 40) < 100);
+    }
+
+    @Test
+    void consumersArePacedToTheRate() throws InterruptedIOException {
+        BandwidthLimiter limiter = new BandwidthLimiter(BandwidthSchedule.parse("1M"));
+
+        assertTrue(millisToAcquire(limiter, RATE / 2) >= 400);
+    }
+
+    @Test
+    void idleTimeFillsTheBucketUpToABurst() throws InterruptedIOException, InterruptedException {
+        BandwidthLimiter limiter = new BandwidthLimiter(BandwidthSchedule.parse("1M"));
+        Thread.sleep(1000);
+
+        // A quarter of a second worth of tokens is kept, not the whole second
+        assertTrue(millisToAcquire(limiter, RATE / 4) < 150);
+        assertTrue(millisToAcquire(limiter, RATE / 4) >= 200);
+    }
+
+    @Test
+    void changingTheScheduleReleasesWaitingConsumers() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(BandwidthSchedule.parse("1K"));
+        CompletableFuture<Long> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return millisToAcquire(limiter, 1024 * 1024);
+            } catch (InterruptedIOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+
+        limiter.setSchedule(BandwidthSchedule.NONE);
+
+        assertTrue(waiting.get(5, TimeUnit.SECONDS) < 5000);
+        assertEquals(BandwidthSchedule.UNLIMITED, limiter.getRate());
+    }
+
+    @Test
+    void cancelledConsumerStopsWaiting() throws InterruptedIOException {
+        BandwidthLimiter limiter = new BandwidthLimiter(BandwidthSchedule.parse("1K"));
+        long start = System.nanoTime();
+
+        limiter.acquire(1024 * 1024, () -> System.nanoTime() - start > 200_000_000L);
+
+        assertTrue((System.nanoTime() - start) / 1_000_000L < 5000);
+    }
+}
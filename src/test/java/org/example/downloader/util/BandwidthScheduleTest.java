@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Parsing of bandwidth schedules and the limit they set over the day.
+ */
+class BandwidthScheduleTest {
+
+    @Test
+    void emptyScheduleIsUnlimited() {
+        assertSame(BandwidthSchedule.NONE, BandwidthSchedule.parse(null));
+        assertSame(BandwidthSchedule.NONE, BandwidthSchedule.parse("  "));
+        assertEquals(BandwidthSchedule.UNLIMITED, BandwidthSchedule.NONE.rateAt(LocalTime.NOON));
+    }
+
+    @Test
+    void windowLimitsWithinItAndPlainRateOutside() {
+        BandwidthSchedule schedule = BandwidthSchedule.parse("08:00-17:00=512K, 4M");
+
+        assertEquals(512 * 1024L, schedule.rateAt(LocalTime.of(8, 0)));
+        assertEquals(512 * 1024L, schedule.rateAt(LocalTime.of(16, 59)));
+        assertEquals(4 * 1024 * 1024L, schedule.rateAt(LocalTime.of(17, 0)));
+        assertEquals(4 * 1024 * 1024L, schedule.rateAt(LocalTime.of(7, 59)));
+    }
+
+    @Test
+    void windowWrapsPastMidnight() {
+        BandwidthSchedule schedule = BandwidthSchedule.parse("22:00-06:00=0, 1M");
+
+        assertEquals(BandwidthSchedule.UNLIMITED, schedule.rateAt(LocalTime.of(23, 30)));
+        assertEquals(BandwidthSchedule.UNLIMITED, schedule.rateAt(LocalTime.of(5, 0)));
+        assertEquals(1024 * 1024L, schedule.rateAt(LocalTime.NOON));
+    }
+
+    @Test
+    void firstMatchingWindowWins() {
+        BandwidthSchedule schedule = BandwidthSchedule.parse("09:00-12:00=1K, 08:00-17:00=2K");
+
+        assertEquals(1024L, schedule.rateAt(LocalTime.of(10, 0)));
+        assertEquals(2048L, schedule.rateAt(LocalTime.of(13, 0)));
+    }
+
+    @Test
+    void ratesTakeSuffixes() {
+        assertEquals(100L, BandwidthSchedule.parseRate("100"));
+        assertEquals(1536L, BandwidthSchedule.parseRate("1.5k"));
+        assertEquals(2 * 1024 * 1024L, BandwidthSchedule.parseRate(" 2M "));
+        assertEquals(1024 * 1024 * 1024L, BandwidthSchedule.parseRate("1G"));
+    }
+
+    @Test
+    void invalidSchedulesAreRejected() {
+        assertFalse(BandwidthSchedule.isValid("fast"));
+        assertFalse(BandwidthSchedule.isValid("-1K"));
+        assertFalse(BandwidthSchedule.isValid("08:00=1M"));
+        assertFalse(BandwidthSchedule.isValid("25:00-26:00=1M"));
+        assertThrows(IllegalArgumentException.class, () -> BandwidthSchedule.parse("08:00-17:00=x"));
+    }
+
+    @Test
+    void scheduleIsWrittenBackAsConfigured() {
+        assertEquals("08:00-17:00=512K, 4M", BandwidthSchedule.parse("08:00-17:00=512K,4M").toString());
+        assertEquals("0", BandwidthSchedule.NONE.toString());
+        assertEquals("1000", BandwidthSchedule.formatRate(1000));
+    }
+}
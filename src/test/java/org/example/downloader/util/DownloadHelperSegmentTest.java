@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import org.example.downloader.TestLoggers;
+import org.example.downloader.WorkLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Recovery of segmented downloads from the sidecar an interrupted run left.
+ */
+class DownloadHelperSegmentTest {
+
+    private static final int SIZE = 1024 * 1024;
+    private static final int HALF = SIZE / 2;
+
+    @TempDir
+    Path dir;
+
+    private final byte[] data = new byte[SIZE];
+    private FakeHttpTransport transport;
+    private WorkLogger logger;
+    private Path file;
+    private DownloadHelper.Download download;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new Random(SIZE).nextBytes(data);
+        transport = new FakeHttpTransport().serve("/file", data);
+        DownloadHelper.setTransport(transport);
+        logger = TestLoggers.create(dir);
+        file = dir.resolve("file");
+        download = new DownloadHelper.Download(new URL("http://mirror.test/file"), file);
+    }
+
+    @AfterEach
+    void tearDown() {
+        DownloadHelper.setTransport(HttpTransport.Engine.POOLED.create());
+    }
+
+    /**
+     * Writes a preallocated file holding the bytes up to each position, and its sidecar.
+     */
+    private void interrupted(long totalSize, String... segments) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+            out.setLength(SIZE);
+            for (String segment : segments) {
+                String[] bounds = segment.split(",");
+                int start = Integer.parseInt(bounds[0]);
+                int position = Integer.parseInt(bounds[2]);
+                out.seek(start);
+                out.write(data, start, position - start);
+            }
+        }
+        writeSidecar(totalSize + "\n" + String.join("\n", segments) + "\n");
+    }
+
+    private void writeSidecar(String content) throws IOException {
+        Files.write(DownloadHelper.segmentFile(file), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void assertCompleted() throws IOException {
+        assertTrue(download.isComplete());
+        assertArrayEquals(data, Files.readAllBytes(file));
+        assertEquals(DigestHelper.toHex(DigestHelper.newSha256().digest(data)), download.getComputedSha256());
+        assertFalse(DownloadHelper.isSegmented(file));
+    }
+
+    private List<String> rangeRequests() {
+        List<String> requests = transport.getRequests();
+        requests.removeIf(request -> !request.startsWith("GET"));
+        requests.sort(null);
+        return requests;
+    }
+
+    @Test
+    void resumesEverySegmentWhereItLeftOff() throws IOException {
+        interrupted(SIZE, "0," + HALF + ",300000", HALF + "," + SIZE + ",600000");
+
+        DownloadHelper.segmentedDownload(download, 2, logger);
+
+        assertCompleted();
+        assertEquals(List.of(
+                "GET /file bytes=300000-" + (HALF - 1),
+                "GET /file bytes=600000-" + (SIZE - 1)
+        ), rangeRequests());
+    }
+
+    @Test
+    void finishedSegmentsAreNotFetchedAgain() throws IOException {
+        interrupted(SIZE, "0," + HALF + "," + HALF, HALF + "," + SIZE + ",700000");
+
+        DownloadHelper.segmentedDownload(download, 2, logger);
+
+        assertCompleted();
+        assertEquals(List.of("GET /file bytes=700000-" + (SIZE - 1)), rangeRequests());
+    }
+
+    @Test
+    void sidecarOfAnotherSizeRestartsFromZero() throws IOException {
+        interrupted(SIZE * 2L, "0," + HALF + ",300000", HALF + "," + SIZE + ",600000");
+
+        DownloadHelper.segmentedDownload(download, 2, logger);
+
+        assertCompleted();
+        assertEquals(List.of(
+                "GET /file bytes=0-" + (HALF - 1),
+                "GET /file bytes=" + HALF + "-" + (SIZE - 1)
+        ), rangeRequests());
+    }
+
+    @Test
+    void tornSidecarRestartsFromZero() throws IOException {
+        interrupted(SIZE, "0," + HALF + ",300000");
+        // A crash while the sidecar was written without its temporary file
+        writeSidecar(SIZE + "\n0," + HALF + ",300000\n" + HALF + ",10");
+
+        DownloadHelper.segmentedDownload(download, 2, logger);
+
+        assertCompleted();
+        assertEquals(List.of(
+                "GET /file bytes=0-" + (HALF - 1),
+                "GET /file bytes=" + HALF + "-" + (SIZE - 1)
+        ), rangeRequests());
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves files from memory, answering HEAD, GET, range and conditional requests the way a
+ * mirror does, and remembers the requests it was sent.
+ */
+public class FakeHttpTransport implements HttpTransport {
+
+    private final Map<String, byte[]> files = new HashMap<>();
+    private final Map<String, String> etags = new HashMap<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    public FakeHttpTransport serve(String path, byte[] data) {
+        files.put(path, data);
+        etags.remove(path);
+        return this;
+    }
+
+    public FakeHttpTransport serve(String path, byte[] data, String etag) {
+        files.put(path, data);
+        etags.put(path, etag);
+        return this;
+    }
+
+    /**
+     * Gets the requests sent, each as the method, the path and the range if there was one.
+     *
+     * @return The requests in the order they arrived.
+     */
+    public List<String> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    @Override
+    public Response request(URL url, String method, Map<String, String> headers, boolean followRedirects) {
+        String range = headers.get("Range");
+        requests.add(method + " " + url.getPath() + (range == null ? "" : " " + range));
+        byte[] data = files.get(url.getPath());
+        if (data == null) {
+            return new FakeResponse(HttpURLConnection.HTTP_NOT_FOUND, new byte[0], Map.of());
+        }
+        Map<String, String> responseHeaders = new HashMap<>();
+        responseHeaders.put("accept-ranges", "bytes");
+        String etag = etags.get(url.getPath());
+        if (etag != null) {
+            responseHeaders.put("etag", etag);
+            if (etag.equals(headers.get("If-None-Match"))) {
+                return new FakeResponse(HttpURLConnection.HTTP_NOT_MODIFIED, new byte[0], responseHeaders);
+            }
+        }
+        int status = HttpURLConnection.HTTP_OK;
+        int start = 0;
+        int end = data.length;
+        if (range != null) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            start = Integer.parseInt(bounds[0]);
+            if (bounds.length > 1 && !bounds[1].isEmpty()) {
+                end = Integer.parseInt(bounds[1]) + 1;
+            }
+            status = HttpURLConnection.HTTP_PARTIAL;
+            responseHeaders.put("content-range", "bytes " + start + "-" + (end - 1) + "/" + data.length);
+        }
+        byte[] body = new byte[end - start];
+        System.arraycopy(data, start, body, 0, body.length);
+        return new FakeResponse(status, "HEAD".equals(method) ? null : body, responseHeaders, body.length);
+    }
+
+    @Override
+    public void close() {}
+
+    private static class FakeResponse implements Response {
+        private final int status;
+        private final byte[] body;
+        private final Map<String, String> headers;
+        private final long contentLength;
+
+        FakeResponse(int status, byte[] body, Map<String, String> headers) {
+            this(status, body, headers, body.length);
+        }
+
+        FakeResponse(int status, byte[] body, Map<String, String> headers, long contentLength) {
+            this.status = status;
+            this.body = body;
+            this.headers = headers;
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return status;
+        }
+
+        @Override
+        public long getContentLength() {
+            return contentLength;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase());
+        }
+
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body == null ? new byte[0] : body);
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import org.example.downloader.TestLoggers;
+import org.example.downloader.WorkLogger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Validators kept for conditional requests, and the refresh of a download that uses them.
+ */
+class HttpCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String DIGEST = "ab".repeat(32);
+
+    @TempDir
+    Path dir;
+
+    private FakeHttpTransport transport;
+    private URL url;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        transport = new FakeHttpTransport().serve("/Release", "Suite: stable\n".getBytes(StandardCharsets.UTF_8), ETAG);
+        DownloadHelper.setTransport(transport);
+        url = new URL("http://mirror.test/Release");
+        file = dir.resolve("Release");
+        Files.write(file, "Suite: stable\n".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void tearDown() {
+        DownloadHelper.setHttpCache(null);
+        DownloadHelper.setTransport(HttpTransport.Engine.POOLED.create());
+    }
+
+    private HttpCache cacheWithEntry() throws IOException {
+        HttpCache cache = new HttpCache(dir.resolve("http-cache"));
+        cache.store(url, transport.request(url, "GET", Map.of(), true), file, DIGEST);
+        return cache;
+    }
+
+    @Test
+    void storedValidatorsMakeTheNextRequestConditional() throws IOException {
+        HttpCache cache = cacheWithEntry();
+
+        assertEquals(Map.of("If-None-Match", ETAG), cache.conditionalHeaders(url, file));
+        assertEquals(DIGEST, cache.getSha256(url, file));
+    }
+
+    @Test
+    void validatorsSurviveReloadingTheIndex() throws IOException {
+        cacheWithEntry();
+
+        HttpCache reloaded = new HttpCache(dir.resolve("http-cache"));
+
+        assertEquals(Map.of("If-None-Match", ETAG), reloaded.conditionalHeaders(url, file));
+        assertEquals(DIGEST, reloaded.getSha256(url, file));
+    }
+
+    @Test
+    void changedLocalCopyIsFetchedUnconditionally() throws IOException {
+        HttpCache cache = cacheWithEntry();
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 60_000));
+
+        assertTrue(cache.conditionalHeaders(url, file).isEmpty());
+    }
+
+    @Test
+    void validatorsAreNotSharedBetweenLocalCopies() throws IOException {
+        HttpCache cache = cacheWithEntry();
+        Path copy = dir.resolve("copy");
+        Files.copy(file, copy);
+
+        assertTrue(cache.conditionalHeaders(url, copy).isEmpty());
+        assertNull(cache.getSha256(url, copy));
+    }
+
+    @Test
+    void responseWithoutValidatorsForgetsTheEntry() throws IOException {
+        HttpCache cache = cacheWithEntry();
+        transport.serve("/Release", "Suite: stable\n".getBytes(StandardCharsets.UTF_8));
+
+        cache.store(url, transport.request(url, "GET", Map.of(), true), file, DIGEST);
+
+        assertTrue(cache.conditionalHeaders(url, file).isEmpty());
+        assertNull(cache.getSha256(url, file));
+    }
+
+    @Test
+    void unchangedMetadataIsNotTransferredAgain() throws IOException {
+        WorkLogger logger = TestLoggers.create(dir);
+        DownloadHelper.setHttpCache(new HttpCache(dir.resolve("http-cache")));
+        Files.delete(file);
+
+        DownloadHelper.Download first = new DownloadHelper.Download(url, file);
+        DownloadHelper.refreshDownload(first, logger);
+        DownloadHelper.Download second = new DownloadHelper.Download(url, file);
+        DownloadHelper.refreshDownload(second, logger);
+
+        assertTrue(first.isComplete());
+        assertFalse(first.isNotModified());
+        assertTrue(second.isComplete());
+        assertTrue(second.isNotModified());
+        assertEquals(first.getComputedSha256(), second.getComputedSha256());
+        assertEquals(List.of("GET /Release", "GET /Release"), transport.getRequests());
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Digests computed while a file is written, from memory and from what is already on disk.
+ */
+class IncrementalDigestTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static String hex(String algorithm, byte[] data) throws NoSuchAlgorithmException {
+        return DigestHelper.toHex(MessageDigest.getInstance(algorithm).digest(data));
+    }
+
+    @Test
+    void bytesFedInPartsGiveTheDigestsOfTheWholeFile() throws IOException, NoSuchAlgorithmException {
+        byte[] data = randomBytes(3 * 1024 * 1024 + 17);
+        Path file = dir.resolve("file");
+        Files.write(file, data);
+
+        IncrementalDigest digest = new IncrementalDigest(data.length, List.of(MultiDigestVerifier.MD5, MultiDigestVerifier.SHA512));
+        // A resumed prefix from disk, then chunks from memory, heap and direct
+        digest.catchUp(file, 1000);
+        digest.update(data, 1000, 500_000);
+        ByteBuffer direct = ByteBuffer.allocateDirect(1024 * 1024);
+        direct.put(data, 501_000, direct.capacity()).flip();
+        digest.update(direct);
+        assertFalse(direct.hasRemaining());
+        digest.update(ByteBuffer.wrap(data, 501_000 + 1024 * 1024, 100_000));
+        // Bytes written ahead of the prefix by another segment
+        digest.catchUp(file, data.length);
+
+        assertEquals(data.length, digest.getPosition());
+        Map<String, String> digests = digest.getDigests();
+        assertEquals(hex("SHA-256", data), digests.get(MultiDigestVerifier.SHA256));
+        assertEquals(hex("MD5", data), digests.get(MultiDigestVerifier.MD5));
+        assertEquals(hex("SHA-512", data), digests.get(MultiDigestVerifier.SHA512));
+    }
+
+    @Test
+    void catchUpToAnOffsetAlreadyHashedReadsNothing() throws IOException {
+        byte[] data = randomBytes(4096);
+        IncrementalDigest digest = new IncrementalDigest();
+        digest.update(data, 0, data.length);
+
+        // The file does not exist, so reading it would fail
+        digest.catchUp(dir.resolve("missing"), 100);
+
+        assertEquals(data.length, digest.getPosition());
+    }
+
+    @Test
+    void fileOfSeveralPiecesGetsAManifest() throws IOException {
+        byte[] data = randomBytes(2 * PieceManifest.PIECE_SIZE + 1234);
+        Path file = dir.resolve("file");
+        Files.write(file, data);
+
+        IncrementalDigest digest = new IncrementalDigest(data.length);
+        digest.catchUp(file, data.length);
+        PieceManifest manifest = digest.getPieceManifest();
+
+        assertNotNull(manifest);
+        assertEquals(3, manifest.getPieceCount());
+        assertEquals(data.length, manifest.getTotalSize());
+        assertTrue(manifest.verify(file, bytes -> {}));
+    }
+
+    @Test
+    void fileOfOnePieceOrUnknownSizeGetsNoManifest() {
+        byte[] data = randomBytes(1024);
+        IncrementalDigest small = new IncrementalDigest(data.length);
+        small.update(data, 0, data.length);
+        IncrementalDigest unknown = new IncrementalDigest();
+        unknown.update(data, 0, data.length);
+
+        assertNull(small.getPieceManifest());
+        assertNull(unknown.getPieceManifest());
+    }
+
+    @Test
+    void finishedDigestTakesNoMoreBytes() {
+        IncrementalDigest digest = new IncrementalDigest();
+        digest.finish();
+
+        assertThrows(IllegalStateException.class, () -> digest.update(new byte[1], 0, 1));
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import org.example.downloader.TestLoggers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Piece manifests, finding the damaged ranges of a file and repairing only those.
+ */
+class PieceManifestTest {
+
+    private static final int PIECE = 64 * 1024;
+    private static final int SIZE = 5 * PIECE + 1000;
+
+    @TempDir
+    Path dir;
+
+    private final byte[] data = new byte[SIZE];
+    private Path file;
+    private PieceManifest manifest;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        new Random(SIZE).nextBytes(data);
+        file = dir.resolve("file");
+        Files.write(file, data);
+        List<String> pieces = new ArrayList<>();
+        for (int start = 0; start < SIZE; start += PIECE) {
+            MessageDigest sha256 = DigestHelper.newSha256();
+            sha256.update(data, start, Math.min(PIECE, SIZE - start));
+            pieces.add(DigestHelper.toHex(sha256.digest()));
+        }
+        manifest = new PieceManifest(PIECE, SIZE, pieces);
+    }
+
+    @AfterEach
+    void tearDown() {
+        DownloadHelper.setTransport(HttpTransport.Engine.POOLED.create());
+    }
+
+    private void damage(long... offsets) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+            for (long offset : offsets) {
+                out.seek(offset);
+                out.write(~data[(int) offset]);
+            }
+        }
+    }
+
+    private static List<String> ranges(List<DownloadHelper.Segment> segments) {
+        List<String> ranges = new ArrayList<>();
+        segments.forEach(segment -> ranges.add(segment.start + "-" + segment.end));
+        return ranges;
+    }
+
+    @Test
+    void savedManifestLoadsAndVerifiesTheFile() throws IOException {
+        Path manifestFile = PieceManifest.manifestFile(dir.resolve("pieces"), "AB".repeat(32));
+        manifest.save(manifestFile);
+
+        PieceManifest loaded = PieceManifest.load(manifestFile);
+
+        assertEquals(dir.resolve("pieces").resolve("ab".repeat(32) + ".pieces"), manifestFile);
+        assertEquals(6, loaded.getPieceCount());
+        assertEquals(SIZE, loaded.getTotalSize());
+        assertTrue(loaded.verify(file, bytes -> {}));
+    }
+
+    @Test
+    void malformedManifestsAreNotLoaded() throws IOException {
+        Path manifestFile = dir.resolve("broken.pieces");
+
+        assertNull(PieceManifest.load(manifestFile));
+        Files.write(manifestFile, new byte[0]);
+        assertNull(PieceManifest.load(manifestFile));
+        Files.write(manifestFile, List.of("64 x"), StandardCharsets.UTF_8);
+        assertNull(PieceManifest.load(manifestFile));
+        // One piece short of the file size
+        Files.write(manifestFile, List.of(PIECE + " " + (2L * PIECE + 1), "a", "b"), StandardCharsets.UTF_8);
+        assertNull(PieceManifest.load(manifestFile));
+    }
+
+    @Test
+    void intactFileHasNoDamage() throws IOException {
+        long[] checked = new long[1];
+
+        assertTrue(manifest.verify(file, bytes -> checked[0] += bytes));
+        assertTrue(manifest.findDamaged(file).isEmpty());
+        assertEquals(SIZE, checked[0]);
+    }
+
+    @Test
+    void adjacentDamagedPiecesAreJoined() throws IOException {
+        damage(PIECE + 5, 3L * PIECE - 1, 4L * PIECE, SIZE - 1);
+
+        assertFalse(manifest.verify(file, bytes -> {}));
+        assertEquals(List.of(PIECE + "-" + 3 * PIECE, 4 * PIECE + "-" + SIZE), ranges(manifest.findDamaged(file)));
+    }
+
+    @Test
+    void fileOfAnotherSizeIsNotChecked() throws IOException {
+        Files.write(file, new byte[SIZE - 1]);
+
+        assertThrows(IOException.class, () -> manifest.verify(file, bytes -> {}));
+    }
+
+    @Test
+    void repairFetchesOnlyTheDamagedPieces() throws IOException {
+        FakeHttpTransport transport = new FakeHttpTransport().serve("/file", data);
+        DownloadHelper.setTransport(transport);
+        damage(10, 3L * PIECE + 7);
+        DownloadHelper.Download download = new DownloadHelper.Download(new URL("http://mirror.test/file"), file);
+
+        long fetched = DownloadHelper.repairDownload(download, manifest, TestLoggers.create(dir));
+
+        assertEquals(2L * PIECE, fetched);
+        assertArrayEquals(data, Files.readAllBytes(file));
+        assertEquals(List.of(
+                "GET /file bytes=0-" + (PIECE - 1),
+                "GET /file bytes=" + 3 * PIECE + "-" + (4 * PIECE - 1)
+        ), transport.getRequests());
+    }
+}
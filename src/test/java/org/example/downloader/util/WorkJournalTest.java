@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2025 by Kristoffer Paulsson <kristoffer.paulsson@talenten.se>.
+ *
+ * This software is available under the terms of the MIT license. Parts are licensed
+ * under different terms if stated. The legal terms are attached to the LICENSE file
+ * and are made available on:
+ *
+ *      https://opensource.org/licenses/MIT
+ *
+ * SPDX-License-Identifier: MIT
+ *
+ * Contributors:
+ *      Kristoffer Paulsson - initial implementation
+ */
+package org.example.downloader.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Recording, compaction and recovery of the work journal.
+ */
+class WorkJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private Path journalFile() {
+        return WorkJournal.journalFileOf(dir.resolve("chain-1.txt"));
+    }
+
+    @Test
+    void journalFileLiesNextToTheBlockchain() {
+        assertEquals(dir.resolve("chain-1.txt" + WorkJournal.SUFFIX), journalFile());
+    }
+
+    @Test
+    void reopenedJournalHasTheLastStateOfEveryJob() {
+        try (WorkJournal journal = WorkJournal.create(journalFile())) {
+            journal.recordPending(List.of("a", "b", "c"));
+            journal.record("a", WorkJournal.State.IN_FLIGHT, 100);
+            journal.record("a", WorkJournal.State.REGISTERED, 200);
+            journal.record("b", WorkJournal.State.FAILED, 50);
+        }
+
+        try (WorkJournal journal = WorkJournal.open(journalFile())) {
+            assertEquals(WorkJournal.State.REGISTERED, journal.get("a").getState());
+            assertEquals(200, journal.get("a").getOffset());
+            assertEquals(WorkJournal.State.FAILED, journal.get("b").getState());
+            assertEquals(List.of("c"), journal.getKeys(WorkJournal.State.PENDING));
+            assertNull(journal.get("d"));
+        }
+    }
+
+    @Test
+    void openingCompactsToOneLinePerJob() throws IOException {
+        try (WorkJournal journal = WorkJournal.create(journalFile())) {
+            journal.recordPending(List.of("a", "b"));
+            journal.record("a", WorkJournal.State.IN_FLIGHT, 10);
+            journal.record("a", WorkJournal.State.VERIFIED, 20);
+        }
+
+        WorkJournal.open(journalFile()).close();
+
+        assertEquals(List.of("verified a 20", "pending b 0"), Files.readAllLines(journalFile(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void tornLastLineIsSkipped() throws IOException {
+        try (WorkJournal journal = WorkJournal.create(journalFile())) {
+            journal.record("a", WorkJournal.State.IN_FLIGHT, 10);
+        }
+        // A crash while the next state was written
+        Files.write(journalFile(), "regis".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (WorkJournal journal = WorkJournal.open(journalFile())) {
+            assertEquals(WorkJournal.State.IN_FLIGHT, journal.get("a").getState());
+            assertEquals(10, journal.get("a").getOffset());
+            journal.record("b", WorkJournal.State.PENDING, 0);
+        }
+
+        // The torn line is gone and new lines start on a line of their own
+        assertEquals(List.of("in-flight a 10", "pending b 0"), Files.readAllLines(journalFile(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void linesOfUnknownStatesAreSkipped() throws IOException {
+        Files.write(journalFile(), List.of("pending a 0", "exported a 10", "verified b x", "registered"), StandardCharsets.UTF_8);
+
+        try (WorkJournal journal = WorkJournal.open(journalFile())) {
+            assertEquals(WorkJournal.State.PENDING, journal.get("a").getState());
+            assertNull(journal.get("b"));
+        }
+    }
+
+    @Test
+    void pendingKeepsJobsJournaledBefore() {
+        try (WorkJournal journal = WorkJournal.create(journalFile())) {
+            journal.record("a", WorkJournal.State.VERIFIED, 30);
+
+            journal.recordPending(List.of("a", "b"));
+
+            assertEquals(WorkJournal.State.VERIFIED, journal.get("a").getState());
+            assertEquals(WorkJournal.State.PENDING, journal.get("b").getState());
+        }
+    }
+
+    @Test
+    void createStartsOverAndOpenOfNothingIsEmpty() {
+        try (WorkJournal journal = WorkJournal.create(journalFile())) {
+            journal.record("a", WorkJournal.State.VERIFIED, 30);
+        }
+
+        try (WorkJournal journal = WorkJournal.create(journalFile())) {
+            assertTrue(journal.isEmpty());
+        }
+        try (WorkJournal journal = WorkJournal.open(dir.resolve("other" + WorkJournal.SUFFIX))) {
+            assertTrue(journal.isEmpty());
+        }
+    }
+
+    @Test
+    void statesAreReadByName() {
+        for (WorkJournal.State state : WorkJournal.State.values()) {
+            assertEquals(state, WorkJournal.State.fromString(" " + state.getName().toUpperCase() + " "));
+        }
+        assertThrows(IllegalArgumentException.class, () -> WorkJournal.State.fromString("done"));
+    }
+}